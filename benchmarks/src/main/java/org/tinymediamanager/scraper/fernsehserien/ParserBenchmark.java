@@ -0,0 +1,266 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.entities.CountryCode;
+import org.tinymediamanager.scraper.entities.MediaEpisode;
+import org.tinymediamanager.scraper.entities.MediaType;
+
+/**
+ * The hot paths of the scraper against the pages in src/test/resources/fixtures, without any network. Run with
+ * java -jar target/benchmarks.jar [JMH options]; besides the throughput the allocation rate per operation (gc.alloc.rate.norm) is
+ * reported.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+	private static final FernsehserienSiteDefinition SITE = FernsehserienSiteDefinition.FERNSEHSERIEN_COM;
+	private static final String[] GENRES = { "Comedy", "Drama", "Sci-Fi", "Reality-TV", "Western", "Comedyserie", "Krimi", "Familienserie", "" };
+	private static final String[] NAMES = { "Malcolm mittendrin", "\"Die Deutschen\"", "\u00a0Frankie Muniz\u00a0", "", " Lois " };
+	private static final Locale[] LANGUAGES = { Locale.GERMAN, Locale.ENGLISH, Locale.FRENCH };
+	private static final CountryCode[] COUNTRIES = { CountryCode.DE, CountryCode.GB, CountryCode.CH, CountryCode.US };
+
+	private byte[] showPage;
+	private byte[] episodePage;
+	private Document episodeDocument;
+	private MediaEpisode pilot;
+	private byte[] largeGuide;
+	private EpisodeGuide parsedLargeGuide;
+	private Document largeGuideDocument;
+	private byte[] fastSearch;
+	private FernsehserienTvShowParser parser;
+
+	@Setup
+	public void setUp() throws IOException {
+		showPage = readFixture("show-malcolm-mittendrin.html.gz");
+		episodePage = readFixture("episode-malcolm-mittendrin-1x01.html.gz");
+		episodeDocument = Jsoup.parse(new ByteArrayInputStream(episodePage), SITE.getCharset().name(), "");
+		largeGuide = readFixture("episodenguide-large.html.gz");
+		parsedLargeGuide = parseGuide(-1, -1, Integer.MAX_VALUE);
+		largeGuideDocument = Jsoup.parse(new ByteArrayInputStream(largeGuide), SITE.getCharset().name(), "");
+		fastSearch = readFixture("fastsearch-die-deutschen.json");
+		parser = new FernsehserienTvShowParser(SITE);
+
+		pilot = new MediaEpisode(FernsehserienMetadataProvider.providerInfo.getId());
+		pilot.title = "Malcolm, der Held";
+		pilot.firstAired = "24.09.2001";
+		pilot.ids.put(FernsehserienMetadataProvider.providerInfo.getId(), "malcolm-mittendrin/folgen/1x01-malcolm-der-held-12345");
+	}
+
+	private static byte[] readFixture(String name) throws IOException {
+		InputStream is = ParserBenchmark.class.getResourceAsStream("/fixtures/" + name);
+		if (is == null) {
+			throw new IOException("fixture " + name + " is missing");
+		}
+		try (InputStream in = name.endsWith(".gz") ? new GZIPInputStream(is) : is) {
+			return IOUtils.toByteArray(in);
+		}
+	}
+
+	private EpisodeGuide parseGuide(int season, int episode, int minRows) throws IOException {
+		EpisodeGuide.Builder builder = new EpisodeGuide.Builder();
+		try (Reader reader = new InputStreamReader(new ByteArrayInputStream(largeGuide), SITE.getCharset())) {
+			return builder.build(new EpisodeGuideStreamParser(reader).parse(builder, season, episode, minRows));
+		}
+	}
+
+	private static MediaMetadata newMetadata() {
+		return new MediaMetadata(FernsehserienMetadataProvider.providerInfo.getId());
+	}
+
+	/**
+	 * getTvShowMetadata: the show page from bytes to metadata
+	 */
+	@Benchmark
+	public MediaMetadata parseInfoPage() {
+		Document doc = SITE.getShowPageParser().parse(showPage, SITE.getCharset());
+		return parser.parseInfoPage(doc, new MediaScrapeOptions(MediaType.TV_SHOW), newMetadata());
+	}
+
+	/**
+	 * getTvShowMetadata the way it was done before only the regions were parsed: the DOM of the whole show page
+	 */
+	@Benchmark
+	public MediaMetadata parseInfoPageFully() {
+		Document doc = Jsoup.parse(new String(showPage, SITE.getCharset()), "");
+		return parser.parseInfoPage(doc, new MediaScrapeOptions(MediaType.TV_SHOW), newMetadata());
+	}
+
+	/**
+	 * findEpisode when the guide isn't cached: read the large guide up to S01E05
+	 */
+	@Benchmark
+	public MediaEpisode findEpisode() throws IOException {
+		return parseGuide(1, 5, 0).getEpisode(1, 5);
+	}
+
+	/**
+	 * findEpisode when the guide isn't cached, the way it was done before the guide was streamed: parse the whole large guide, then look
+	 */
+	@Benchmark
+	public Element findEpisodeInWholeDocument() throws IOException {
+		Document doc = Jsoup.parse(new ByteArrayInputStream(largeGuide), SITE.getCharset().name(), "");
+		return findInDocument(doc, 1, 5);
+	}
+
+	/**
+	 * findEpisode when the guide is cached
+	 */
+	@Benchmark
+	public MediaEpisode findEpisodeInParsedGuide() {
+		return parsedLargeGuide.getEpisode(7, 123);
+	}
+
+	/**
+	 * findEpisode when the guide is cached, the way it was done before the guide was indexed: walk the rows of the DOM
+	 */
+	@Benchmark
+	public Element findEpisodeInDocument() {
+		return findInDocument(largeGuideDocument, 7, 123);
+	}
+
+	private static Element findInDocument(Document doc, int seasonNr, int episodeNr) {
+		for (Element episode : doc.getElementsByAttributeValue("itemprop", "episode")) {
+			Elements numbers = episode.getElementsByClass("episodenliste-episodennummer");
+			String seasonStr = numbers.get(1).text();
+			int season = 0;
+			int episodeNo = 0;
+			if (StringUtils.isNotBlank(seasonStr)) {
+				season = Integer.parseInt(seasonStr.substring(0, seasonStr.length() - 1));
+				episodeNo = Integer.parseInt(numbers.get(2).text());
+			}
+			else if (StringUtils.isNotBlank(numbers.get(0).text())) {
+				episodeNo = Integer.parseInt(numbers.get(0).text());
+			}
+			if (season == seasonNr && episodeNo == episodeNr) {
+				return episode;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * getEpisodeList when the guide isn't cached: read the whole large guide
+	 */
+	@Benchmark
+	public List<MediaEpisode> getEpisodeList() throws IOException {
+		return parseGuide(-1, -1, Integer.MAX_VALUE).getEpisodes();
+	}
+
+	/**
+	 * getEpisodeMetadata: the episode page from bytes to metadata with cast and crew
+	 */
+	@Benchmark
+	public MediaMetadata getEpisodeMetadata() {
+		Document doc = Jsoup.parse(new String(episodePage, SITE.getCharset()), "");
+		MediaMetadata md = newMetadata();
+		parser.parseEpisodePage(doc, pilot, md);
+		return md;
+	}
+
+	/**
+	 * getEpisodeMetadata without building the DOM: title, plot, cast and crew
+	 */
+	@Benchmark
+	public MediaMetadata parseCastAndCrew() {
+		MediaMetadata md = newMetadata();
+		parser.parseEpisodePage(episodeDocument, pilot, md);
+		return md;
+	}
+
+	/**
+	 * the fast search response (60 results, 40 read)
+	 */
+	@Benchmark
+	public List<SearchResult> decodeFastSearch() throws IOException {
+		return SearchResult.read(new InputStreamReader(new ByteArrayInputStream(fastSearch), StandardCharsets.UTF_8), 40);
+	}
+
+	@Benchmark
+	public void getTmmGenre(Blackhole blackhole) {
+		for (String genre : GENRES) {
+			blackhole.consume(FernsehserienMetadataProvider.getTmmGenre(genre));
+		}
+	}
+
+	@Benchmark
+	public void cleanString(Blackhole blackhole) {
+		for (String name : NAMES) {
+			blackhole.consume(FernsehserienMetadataProvider.cleanString(name));
+		}
+	}
+
+	@Benchmark
+	public void getAcceptLanguage(Blackhole blackhole) {
+		for (Locale language : LANGUAGES) {
+			for (CountryCode country : COUNTRIES) {
+				blackhole.consume(FernsehserienTvShowParser.getAcceptLanguage(language, country));
+			}
+		}
+	}
+
+	/**
+	 * run the benchmarks with the GC profiler, so that the allocations per operation are reported too
+	 */
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(commandLine).addProfiler(GCProfiler.class);
+		// the includes of the parent are added to our own, so only run all of them when none were given
+		if (commandLine.getIncludes().isEmpty()) {
+			options.include(ParserBenchmark.class.getSimpleName());
+		}
+		new Runner(options.build()).run();
+	}
+}
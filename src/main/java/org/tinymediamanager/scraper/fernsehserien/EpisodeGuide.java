@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.tinymediamanager.scraper.entities.MediaEpisode;
+
+/**
+ * The parsed episode guide (/&lt;id&gt;/episodenguide) of a series. The guide is immutable so that it can be shared between threads;
+ * every caller gets its own MediaEpisode objects.
+ *
+ * Season and episode number of every row are packed into one long key and stored in an open addressing hash table, so looking up an
+ * episode is a constant time probe without boxing or allocating anything.
+ */
+class EpisodeGuide {
+	private final boolean complete;
+	private final int size;
+	private final int[] seasons;
+	private final int[] episodes;
+	private final String[] ids;
+	private final String[] titles;
+	private final String[] firstAired;
+
+	// open addressing table: packed (season, episode) keys and the row index + 1 (0 = empty slot)
+	private final long[] indexKeys;
+	private final int[] indexRows;
+	private final int indexMask;
+
+	private EpisodeGuide(Builder builder, boolean complete) {
+		this.complete = complete;
+		this.size = builder.size;
+		this.seasons = Arrays.copyOf(builder.seasons, size);
+		this.episodes = Arrays.copyOf(builder.episodes, size);
+		this.ids = Arrays.copyOf(builder.ids, size);
+		this.titles = Arrays.copyOf(builder.titles, size);
+		this.firstAired = Arrays.copyOf(builder.firstAired, size);
+
+		// keep the load factor at or below 0.5 so that probe sequences stay short
+		int capacity = Integer.highestOneBit(Math.max(4, size * 2 - 1)) << 1;
+		this.indexKeys = new long[capacity];
+		this.indexRows = new int[capacity];
+		this.indexMask = capacity - 1;
+		for (int i = 0; i < size; i++) {
+			long key = key(seasons[i], episodes[i]);
+			int slot = slot(key);
+			while (indexRows[slot] != 0 && indexKeys[slot] != key) {
+				slot = (slot + 1) & indexMask;
+			}
+			// the first row wins if a number is listed twice, just like scanning the guide from the top
+			if (indexRows[slot] == 0) {
+				indexKeys[slot] = key;
+				indexRows[slot] = i + 1;
+			}
+		}
+	}
+
+	private static long key(int season, int episode) {
+		return ((long) season << 32) | (episode & 0xffffffffL);
+	}
+
+	private int slot(long key) {
+		// finalizer of MurmurHash3 to spread season and episode over all bits
+		long h = key;
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return (int) h & indexMask;
+	}
+
+	/**
+	 * look up the row of an episode
+	 *
+	 * @param season the season no
+	 * @param episode the episode no
+	 * @return the row index or -1 if the episode is not in the guide
+	 */
+	int indexOf(int season, int episode) {
+		long key = key(season, episode);
+		int slot = slot(key);
+		int row;
+		while ((row = indexRows[slot]) != 0) {
+			if (indexKeys[slot] == key) {
+				return row - 1;
+			}
+			slot = (slot + 1) & indexMask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return false if parsing stopped early, i.e. the guide only holds the first rows of the episode guide
+	 */
+	boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return the number of episodes in the guide
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * find an episode
+	 *
+	 * @param season the season no
+	 * @param episode the episode no
+	 * @return the episode or null if it is not in the guide
+	 */
+	MediaEpisode getEpisode(int season, int episode) {
+		int i = indexOf(season, episode);
+		return i < 0 ? null : toMediaEpisode(i);
+	}
+
+	/**
+	 * @return all episodes in the order of the guide
+	 */
+	List<MediaEpisode> getEpisodes() {
+		List<MediaEpisode> result = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			result.add(toMediaEpisode(i));
+		}
+		return result;
+	}
+
+	MediaEpisode toMediaEpisode(int i) {
+		MediaEpisode me = new MediaEpisode(FernsehserienMetadataProvider.providerInfo.getId());
+		me.ids.put(FernsehserienMetadataProvider.providerInfo.getId(), ids[i]);
+		me.season = seasons[i];
+		me.episode = episodes[i];
+		me.title = titles[i];
+		me.firstAired = firstAired[i];
+		return me;
+	}
+
+	/**
+	 * Collects the rows of an episode guide while it is parsed
+	 */
+	static class Builder {
+		private int size;
+		private int[] seasons = new int[64];
+		private int[] episodes = new int[64];
+		private String[] ids = new String[64];
+		private String[] titles = new String[64];
+		private String[] firstAired = new String[64];
+
+		Builder add(int season, int episode, String id, String title, String aired) {
+			if (size == seasons.length) {
+				int capacity = size * 2;
+				seasons = Arrays.copyOf(seasons, capacity);
+				episodes = Arrays.copyOf(episodes, capacity);
+				ids = Arrays.copyOf(ids, capacity);
+				titles = Arrays.copyOf(titles, capacity);
+				firstAired = Arrays.copyOf(firstAired, capacity);
+			}
+			seasons[size] = season;
+			episodes[size] = episode;
+			ids[size] = id;
+			titles[size] = title;
+			firstAired[size] = aired;
+			size++;
+			return this;
+		}
+
+		/**
+		 * add a row as it is listed in the guide: the running number, the season ("1.") and the episode ("01") column. Specials have an
+		 * empty season column and end up in season 0.
+		 */
+		Builder addRow(String number, String seasonStr, String episodeStr, String id, String title, String aired) {
+			// 	1		1.	01		Malcolm, der Held	24.09.2001	Pilot	09.01.2000
+			if (StringUtils.isBlank(seasonStr)) {
+				// Specials
+				return add(0, StringUtils.isBlank(number) ? 0 : Integer.parseInt(number), id, title, aired);
+			}
+			return add(Integer.parseInt(seasonStr.substring(0, seasonStr.length() - 1)), // remove .
+					Integer.parseInt(episodeStr), id, title, aired);
+		}
+
+		int size() {
+			return size;
+		}
+
+		int lastSeason() {
+			return size == 0 ? -1 : seasons[size - 1];
+		}
+
+		int lastEpisode() {
+			return size == 0 ? -1 : episodes[size - 1];
+		}
+
+		EpisodeGuide build() {
+			return new EpisodeGuide(this, true);
+		}
+
+		/**
+		 * @param complete false if only the first rows of the guide were read
+		 */
+		EpisodeGuide build(boolean complete) {
+			return new EpisodeGuide(this, complete);
+		}
+	}
+}
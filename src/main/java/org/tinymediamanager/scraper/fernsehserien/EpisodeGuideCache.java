@@ -0,0 +1,136 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class EpisodeGuideCache holds the parsed episode guides of the most recently used series. Entries are evicted when the cache is
+ * full (least recently used first) or when they are older than the time to live.
+ */
+class EpisodeGuideCache {
+	private final int maxEntries;
+	private final long ttlNanos;
+	private final LinkedHashMap<String, Entry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxEntries the maximum number of series kept
+	 * @param ttlMillis the time in ms after which a guide is parsed again
+	 */
+	EpisodeGuideCache(final int maxEntries, long ttlMillis) {
+		this.maxEntries = maxEntries;
+		this.ttlNanos = ttlMillis * 1000000L;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > EpisodeGuideCache.this.maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * get the cached guide of a series
+	 *
+	 * @param fernsehserienId the id of the series
+	 * @return the guide or null if it is not cached (or expired)
+	 */
+	synchronized EpisodeGuide get(String fernsehserienId) {
+		Entry entry = entries.get(fernsehserienId);
+		if (entry != null && System.nanoTime() - entry.created > ttlNanos) {
+			entries.remove(fernsehserienId);
+			evictions.incrementAndGet();
+			entry = null;
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.guide;
+	}
+
+	synchronized void put(String fernsehserienId, EpisodeGuide guide) {
+		long now = System.nanoTime();
+		Entry existing = entries.get(fernsehserienId);
+		if (!guide.isComplete() && existing != null && now - existing.created <= ttlNanos
+				&& (existing.guide.isComplete() || existing.guide.size() >= guide.size())) {
+			// somebody else read more of the guide in the meantime
+			return;
+		}
+		entries.put(fernsehserienId, new Entry(guide, now));
+
+		// drop expired guides of series nobody asks for anymore
+		Iterator<Entry> it = entries.values().iterator();
+		while (it.hasNext()) {
+			if (now - it.next().created > ttlNanos) {
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	synchronized void invalidate(String fernsehserienId) {
+		entries.remove(fernsehserienId);
+	}
+
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	long getEvictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "EpisodeGuideCache[size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	private static class Entry {
+		final EpisodeGuide guide;
+		final long created;
+
+		Entry(EpisodeGuide guide, long created) {
+			this.guide = guide;
+			this.created = created;
+		}
+	}
+}
@@ -0,0 +1,549 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The class EpisodeGuideStreamParser reads the rows of an episode guide (/&lt;id&gt;/episodenguide) straight from the response without
+ * building a DOM. It only tokenizes the markup and tracks the open elements; every row (itemprop="episode") is added to the guide as
+ * soon as it is closed, so reading can stop right after the wanted episode.
+ *
+ * The extraction is the same as with jsoup: the three episodenliste-episodennummer cells (the first one carries the data-href id), the
+ * itemprop="name" text of the first episodenliste-titel cell and the text of the first episodenliste-ea cell.
+ */
+class EpisodeGuideStreamParser {
+	private static final Logger LOGGER = LoggerFactory.getLogger(EpisodeGuideStreamParser.class);
+
+	// both sorted for the binary search
+	private static final String[] VOID_ELEMENTS = { "area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", "link", "meta",
+			"param", "source", "track", "wbr" };
+	private static final String[] RAW_TEXT_ELEMENTS = { "iframe", "noembed", "noframes", "script", "style", "textarea", "title", "xmp" };
+
+	private static final String[] TABLE_CELLS = { "td", "th" };
+	private static final String[] TABLE_ROWS = { "tr" };
+	private static final String[] LIST_ITEMS = { "li" };
+	private static final String[] TABLE_ROW_SCOPE = { "tr", "table", "tbody", "thead", "tfoot" };
+	private static final String[] TABLE_SCOPE = { "table", "tbody", "thead", "tfoot" };
+	private static final String[] LIST_SCOPE = { "ul", "ol" };
+
+	private final Reader reader;
+	private final char[] buffer = new char[8192];
+	private int pos;
+	private int limit;
+
+	// open elements
+	private String[] stack = new String[32];
+	private int depth;
+
+	// attributes of the current start tag we are interested in
+	private String attrClass;
+	private String attrItemprop;
+	private String attrDataHref;
+
+	// state of the current row; the depths are the stack depths of the elements, -1 if not open
+	private int rowDepth = -1;
+	private int numberDepth = -1;
+	private int titleDepth = -1;
+	private int nameDepth = -1;
+	private int airedDepth = -1;
+	private boolean titleSeen;
+	private boolean airedSeen;
+	private int numberCount;
+	private final String[] numbers = new String[3];
+	private String rowId;
+	private final StringBuilder numberText = new StringBuilder();
+	private final StringBuilder titleText = new StringBuilder();
+	private final StringBuilder airedText = new StringBuilder();
+	private final StringBuilder nameText = new StringBuilder();
+
+	private EpisodeGuide.Builder guide;
+	private int wantedSeason;
+	private int wantedEpisode;
+	private int minRows;
+	// the wanted episode was among the rows read so far
+	private boolean wantedSeen;
+	private boolean stopped;
+
+	EpisodeGuideStreamParser(Reader reader) {
+		this.reader = reader;
+	}
+
+	/**
+	 * read the whole guide
+	 *
+	 * @param guide the guide to add the rows to
+	 * @throws IOException
+	 */
+	void parse(EpisodeGuide.Builder guide) throws IOException {
+		parse(guide, -1, -1, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * read the guide until the wanted episode has been seen and at least minRows rows have been read
+	 *
+	 * @param guide the guide to add the rows to
+	 * @param wantedSeason the season no
+	 * @param wantedEpisode the episode no
+	 * @param minRows the minimum number of rows to read
+	 * @return true if the whole guide has been read, false if reading stopped early
+	 * @throws IOException
+	 */
+	boolean parse(EpisodeGuide.Builder guide, int wantedSeason, int wantedEpisode, int minRows) throws IOException {
+		this.guide = guide;
+		this.wantedSeason = wantedSeason;
+		this.wantedEpisode = wantedEpisode;
+		this.minRows = minRows;
+
+		int c;
+		while (!stopped && (c = read()) != -1) {
+			if (c == '<') {
+				tag();
+			}
+			else {
+				text((char) c);
+			}
+		}
+		if (stopped) {
+			return false;
+		}
+		endRow();
+		return true;
+	}
+
+	private int read() throws IOException {
+		if (pos == limit) {
+			limit = reader.read(buffer, 0, buffer.length);
+			pos = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[pos++];
+	}
+
+	private void unread() {
+		pos--;
+	}
+
+	private void text(char c) {
+		if (numberDepth >= 0) {
+			numberText.append(c);
+		}
+		if (nameDepth >= 0) {
+			nameText.append(c);
+		}
+		if (airedDepth >= 0) {
+			airedText.append(c);
+		}
+	}
+
+	private void tag() throws IOException {
+		int c = read();
+		if (c == '!') {
+			markupDeclaration();
+		}
+		else if (c == '?') {
+			skipTo('>');
+		}
+		else if (c == '/') {
+			endTag();
+		}
+		else if (isLetter(c)) {
+			startTag((char) c);
+		}
+		else {
+			// a plain '<' in the text
+			text('<');
+			if (c != -1) {
+				unread();
+			}
+		}
+	}
+
+	private void markupDeclaration() throws IOException {
+		int c = read();
+		if (c == '-') {
+			c = read();
+			if (c == '-') {
+				// comment: skip to -->
+				int dashes = 0;
+				while ((c = read()) != -1) {
+					if (c == '>' && dashes >= 2) {
+						return;
+					}
+					dashes = c == '-' ? dashes + 1 : 0;
+				}
+				return;
+			}
+		}
+		if (c != '>' && c != -1) {
+			skipTo('>');
+		}
+	}
+
+	private void skipTo(char end) throws IOException {
+		int c;
+		while ((c = read()) != -1 && c != end) {
+			// skip
+		}
+	}
+
+	private void startTag(char first) throws IOException {
+		StringBuilder name = new StringBuilder();
+		name.append(Character.toLowerCase(first));
+		int c;
+		while ((c = read()) != -1 && !isWhitespace(c) && c != '>' && c != '/') {
+			name.append(Character.toLowerCase((char) c));
+		}
+
+		attrClass = null;
+		attrItemprop = null;
+		attrDataHref = null;
+		boolean selfClosing = false;
+
+		// attributes
+		while (c != -1 && c != '>') {
+			if (c == '/') {
+				c = read();
+				if (c == '>') {
+					selfClosing = true;
+					break;
+				}
+				continue;
+			}
+			if (isWhitespace(c)) {
+				c = read();
+				continue;
+			}
+
+			StringBuilder attrName = new StringBuilder();
+			while (c != -1 && !isWhitespace(c) && c != '=' && c != '>' && c != '/') {
+				attrName.append(Character.toLowerCase((char) c));
+				c = read();
+			}
+			while (isWhitespace(c)) {
+				c = read();
+			}
+			String value = "";
+			if (c == '=') {
+				c = read();
+				while (isWhitespace(c)) {
+					c = read();
+				}
+				StringBuilder attrValue = new StringBuilder();
+				if (c == '"' || c == '\'') {
+					int quote = c;
+					while ((c = read()) != -1 && c != quote) {
+						attrValue.append((char) c);
+					}
+					c = read();
+				}
+				else {
+					while (c != -1 && !isWhitespace(c) && c != '>') {
+						attrValue.append((char) c);
+						c = read();
+					}
+				}
+				value = attrValue.toString();
+			}
+			attribute(attrName.toString(), value);
+		}
+
+		String tagName = name.toString();
+		if (Arrays.binarySearch(RAW_TEXT_ELEMENTS, tagName) >= 0) {
+			if (!selfClosing) {
+				skipRawText(tagName);
+			}
+			return;
+		}
+		boolean isVoid = selfClosing || Arrays.binarySearch(VOID_ELEMENTS, tagName) >= 0;
+		startElement(tagName, isVoid);
+	}
+
+	private void attribute(String name, String value) {
+		switch (name) {
+			case "class":
+				attrClass = value;
+				break;
+			case "itemprop":
+				attrItemprop = value.trim();
+				break;
+			case "data-href":
+				attrDataHref = Parser.unescapeEntities(value, true);
+				break;
+			default:
+				break;
+		}
+	}
+
+	private void skipRawText(String tagName) throws IOException {
+		// skip everything up to the matching end tag
+		String endTag = "</" + tagName;
+		int matched = 0;
+		int c;
+		while ((c = read()) != -1) {
+			if (matched == endTag.length()) {
+				if (c == '>' || isWhitespace(c) || c == '/') {
+					if (c != '>') {
+						skipTo('>');
+					}
+					return;
+				}
+				matched = 0;
+			}
+			if (Character.toLowerCase((char) c) == endTag.charAt(matched)) {
+				matched++;
+			}
+			else {
+				matched = c == '<' ? 1 : 0;
+			}
+		}
+	}
+
+	private void endTag() throws IOException {
+		StringBuilder name = new StringBuilder();
+		int c;
+		while ((c = read()) != -1 && !isWhitespace(c) && c != '>') {
+			name.append(Character.toLowerCase((char) c));
+		}
+		if (c != '>' && c != -1) {
+			skipTo('>');
+		}
+
+		String tagName = name.toString();
+		for (int i = depth - 1; i >= 0; i--) {
+			if (stack[i].equals(tagName)) {
+				// close the element and everything that was left open in it
+				while (depth > i) {
+					endElement(depth);
+					depth--;
+				}
+				return;
+			}
+		}
+	}
+
+	private void startElement(String tagName, boolean isVoid) {
+		// cells and rows don't need an end tag: a new one closes the open one
+		switch (tagName) {
+			case "td":
+			case "th":
+				closeImplied(TABLE_CELLS, TABLE_ROW_SCOPE);
+				break;
+			case "tr":
+				closeImplied(TABLE_ROWS, TABLE_SCOPE);
+				break;
+			case "li":
+				closeImplied(LIST_ITEMS, LIST_SCOPE);
+				break;
+			default:
+				break;
+		}
+
+		if ("episode".equalsIgnoreCase(attrItemprop)) {
+			// a new row implicitly ends an unclosed one
+			endRow();
+			if (stopped) {
+				return;
+			}
+			rowDepth = depth + 1;
+		}
+
+		if ("br".equals(tagName)) {
+			text(' ');
+		}
+
+		if (rowDepth >= 0) {
+			int elementDepth = depth + 1;
+			if (hasClass("episodenliste-episodennummer") && numberDepth < 0) {
+				if (numberCount == 0) {
+					rowId = attrDataHref == null ? "" : attrDataHref;
+				}
+				numberDepth = elementDepth;
+				numberText.setLength(0);
+			}
+			if (hasClass("episodenliste-titel") && !titleSeen) {
+				titleSeen = true;
+				titleDepth = elementDepth;
+			}
+			if (titleDepth >= 0 && nameDepth < 0 && "name".equalsIgnoreCase(attrItemprop)) {
+				nameDepth = elementDepth;
+				nameText.setLength(0);
+			}
+			if (hasClass("episodenliste-ea") && !airedSeen) {
+				airedSeen = true;
+				airedDepth = elementDepth;
+			}
+			if (isVoid) {
+				// e.g. <td class="episodenliste-ea"/>
+				endElement(elementDepth);
+			}
+		}
+
+		if (!isVoid) {
+			if (depth == stack.length) {
+				stack = Arrays.copyOf(stack, depth * 2);
+			}
+			stack[depth++] = tagName;
+		}
+	}
+
+	private void closeImplied(String[] names, String[] scope) {
+		for (int i = depth - 1; i >= 0; i--) {
+			if (contains(scope, stack[i])) {
+				return;
+			}
+			if (contains(names, stack[i])) {
+				while (depth > i) {
+					endElement(depth);
+					depth--;
+				}
+				return;
+			}
+		}
+	}
+
+	private static boolean contains(String[] names, String name) {
+		for (String n : names) {
+			if (n.equals(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void endElement(int elementDepth) {
+		if (elementDepth == numberDepth) {
+			if (numberCount < numbers.length) {
+				numbers[numberCount] = normalizedText(numberText);
+			}
+			numberCount++;
+			numberDepth = -1;
+		}
+		if (elementDepth == nameDepth) {
+			if (titleText.length() > 0) {
+				titleText.append(' ');
+			}
+			titleText.append(normalizedText(nameText));
+			nameDepth = -1;
+		}
+		if (elementDepth == titleDepth) {
+			titleDepth = -1;
+		}
+		if (elementDepth == airedDepth) {
+			airedDepth = -1;
+		}
+		if (elementDepth == rowDepth) {
+			endRow();
+		}
+	}
+
+	private void endRow() {
+		if (rowDepth < 0) {
+			return;
+		}
+		rowDepth = -1;
+
+		if (numberCount < numbers.length) {
+			LOGGER.debug("skipping episode row with " + numberCount + " number columns");
+		}
+		else {
+			try {
+				guide.addRow(numbers[0], numbers[1], numbers[2], rowId, titleText.toString(), normalizedText(airedText));
+				if (guide.lastSeason() == wantedSeason && guide.lastEpisode() == wantedEpisode) {
+					wantedSeen = true;
+				}
+				if (wantedSeen && guide.size() >= minRows) {
+					stopped = true;
+				}
+			}
+			catch (NumberFormatException e) {
+				LOGGER.debug("skipping episode row with unreadable numbers: " + e.getMessage());
+			}
+		}
+
+		numberDepth = -1;
+		titleDepth = -1;
+		nameDepth = -1;
+		airedDepth = -1;
+		titleSeen = false;
+		airedSeen = false;
+		numberCount = 0;
+		Arrays.fill(numbers, null);
+		rowId = "";
+		titleText.setLength(0);
+		airedText.setLength(0);
+	}
+
+	private boolean hasClass(String className) {
+		if (attrClass == null || attrClass.length() < className.length()) {
+			return false;
+		}
+		int from = 0;
+		int length = attrClass.length();
+		while (from < length) {
+			int index = attrClass.indexOf(className, from);
+			if (index < 0) {
+				return false;
+			}
+			int end = index + className.length();
+			if ((index == 0 || isWhitespace(attrClass.charAt(index - 1))) && (end == length || isWhitespace(attrClass.charAt(end)))) {
+				return true;
+			}
+			from = index + 1;
+		}
+		return false;
+	}
+
+	/*
+	 * decode the entities and normalize the whitespace like Element.text() does
+	 */
+	private static String normalizedText(StringBuilder raw) {
+		String text = raw.indexOf("&") >= 0 ? Parser.unescapeEntities(raw.toString(), false) : raw.toString();
+		StringBuilder sb = new StringBuilder(text.length());
+		boolean lastWasWhite = false;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (isWhitespace(c)) {
+				if (!lastWasWhite) {
+					sb.append(' ');
+					lastWasWhite = true;
+				}
+			}
+			else {
+				sb.append(c);
+				lastWasWhite = false;
+			}
+		}
+		return sb.toString().trim();
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+	}
+
+	private static boolean isLetter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+/**
+ * The season and episode number of an episode; specials are in season 0
+ */
+public final class EpisodeNumber implements Comparable<EpisodeNumber> {
+	private final int season;
+	private final int episode;
+
+	public EpisodeNumber(int season, int episode) {
+		this.season = season;
+		this.episode = episode;
+	}
+
+	public int getSeason() {
+		return season;
+	}
+
+	public int getEpisode() {
+		return episode;
+	}
+
+	@Override
+	public int compareTo(EpisodeNumber other) {
+		if (season != other.season) {
+			return season < other.season ? -1 : 1;
+		}
+		if (episode != other.episode) {
+			return episode < other.episode ? -1 : 1;
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof EpisodeNumber)) {
+			return false;
+		}
+		EpisodeNumber other = (EpisodeNumber) obj;
+		return season == other.season && episode == other.episode;
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * season + episode;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("S%02dE%02d", season, episode);
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+
+/**
+ * The class ExtractionRule says where a field is found on a page of the site: a CSS selector and/or a regex whose first group is the value.
+ * Both are compiled once when the site definition is created, so a broken rule shows up at startup and not while scraping.
+ *
+ * Selectors are the part of CSS the site definitions need: elements like "tag.class#id[attribute]" separated by blanks for descendants.
+ */
+class ExtractionRule {
+	// one element of a selector
+	private static final Pattern SELECTOR_STEP = Pattern.compile("([a-zA-Z][a-zA-Z0-9]*)?((?:[.#][\\w-]+|\\[[\\w-]+\\])*)");
+	private static final Pattern SELECTOR_PART = Pattern.compile("([.#])([\\w-]+)|\\[([\\w-]+)\\]");
+
+	/**
+	 * The fields a site definition has to have a rule for
+	 */
+	enum Field {
+		// full search
+		SEARCH_RESULT,
+		SEARCH_LINK,
+		SEARCH_TITLE,
+		SEARCH_BANNER,
+		SEARCH_YEAR,
+		// show page
+		SHOW_TITLE,
+		SHOW_PRODUCTION,
+		SHOW_COUNTRY,
+		SHOW_YEARS,
+		SHOW_ORIGINAL_TITLE,
+		SHOW_FIRST_AIRED,
+		SHOW_PLOT,
+		SHOW_GENRE,
+		// episode page
+		EPISODE_ORIGINAL_TITLE,
+		EPISODE_RUNTIME,
+		EPISODE_PLOT,
+		EPISODE_THUMB,
+		CAST_TABLE,
+		CAST_ROW,
+		CAST_NAME,
+		CAST_ROLE,
+		CAST_REMARK,
+		CAST_IMAGE,
+		// dates like 24.09.2001, anywhere
+		DATE
+	}
+
+	private final Field field;
+	private final String selector;
+	private final Evaluator evaluator;
+	private final Pattern pattern;
+	private final boolean ownText;
+	private final boolean verified;
+
+	private ExtractionRule(Field field, String selector, String regex, boolean ownText) {
+		this(field, selector, regex, ownText, true);
+	}
+
+	private ExtractionRule(Field field, String selector, String regex, boolean ownText, boolean verified) {
+		this.field = field;
+		this.selector = selector;
+		this.ownText = ownText;
+		this.verified = verified;
+		this.evaluator = selector == null ? null : compileSelector(field, selector);
+		try {
+			this.pattern = regex == null ? null : Pattern.compile(regex);
+		}
+		catch (PatternSyntaxException e) {
+			throw new IllegalArgumentException("invalid regex for " + field + ": " + e.getMessage(), e);
+		}
+		if (evaluator == null && pattern == null) {
+			throw new IllegalArgumentException("the rule for " + field + " has neither a selector nor a regex");
+		}
+	}
+
+	/**
+	 * @return a rule for elements
+	 */
+	static ExtractionRule select(Field field, String selector) {
+		return new ExtractionRule(field, selector, null, false);
+	}
+
+	/**
+	 * @return a rule for a value in the text of an element
+	 */
+	static ExtractionRule select(Field field, String selector, String regex) {
+		return new ExtractionRule(field, selector, regex, false);
+	}
+
+	/**
+	 * @return a rule for a value in the own text (without the text of the child elements) of an element
+	 */
+	static ExtractionRule selectOwnText(Field field, String selector, String regex) {
+		return new ExtractionRule(field, selector, regex, true);
+	}
+
+	/**
+	 * @return a rule for a value in a text
+	 */
+	static ExtractionRule match(Field field, String regex) {
+		return new ExtractionRule(field, null, regex, false);
+	}
+
+	/**
+	 * @return the same rule, marked as not yet checked against real pages of the site
+	 */
+	ExtractionRule unverified() {
+		return new ExtractionRule(field, selector, pattern == null ? null : pattern.pattern(), ownText, false);
+	}
+
+	/**
+	 * @return false if the rule has only been tried on pages that were written after the markup of the site
+	 */
+	boolean isVerified() {
+		return verified;
+	}
+
+	private static Evaluator compileSelector(Field field, String selector) {
+		List<Evaluator> steps = new ArrayList<>();
+		for (String step : selector.trim().split("\\s+")) {
+			Matcher matcher = SELECTOR_STEP.matcher(step);
+			if (step.isEmpty() || !matcher.matches()) {
+				throw new IllegalArgumentException("invalid selector for " + field + ": " + selector);
+			}
+			List<Evaluator> conditions = new ArrayList<>();
+			if (matcher.group(1) != null) {
+				conditions.add(new Evaluator.Tag(matcher.group(1).toLowerCase(Locale.ROOT)));
+			}
+			Matcher part = SELECTOR_PART.matcher(matcher.group(2));
+			while (part.find()) {
+				if (part.group(3) != null) {
+					conditions.add(new Evaluator.Attribute(part.group(3)));
+				}
+				else if (part.group(1).equals(".")) {
+					conditions.add(new Evaluator.Class(part.group(2)));
+				}
+				else {
+					conditions.add(new Evaluator.Id(part.group(2)));
+				}
+			}
+			steps.add(conditions.size() == 1 ? conditions.get(0) : new AllOf(conditions));
+		}
+		return steps.size() == 1 ? steps.get(0) : new Descendant(steps);
+	}
+
+	/**
+	 * An element that matches all conditions
+	 */
+	private static class AllOf extends Evaluator {
+		private final Evaluator[] conditions;
+
+		AllOf(List<Evaluator> conditions) {
+			this.conditions = conditions.toArray(new Evaluator[conditions.size()]);
+		}
+
+		@Override
+		public boolean matches(Element root, Element element) {
+			for (Evaluator condition : conditions) {
+				if (!condition.matches(root, element)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * An element that matches the last step and has ancestors (below root) that match the steps before, in that order
+	 */
+	private static class Descendant extends Evaluator {
+		private final Evaluator[] steps;
+
+		Descendant(List<Evaluator> steps) {
+			this.steps = steps.toArray(new Evaluator[steps.size()]);
+		}
+
+		@Override
+		public boolean matches(Element root, Element element) {
+			int step = steps.length - 1;
+			if (!steps[step].matches(root, element)) {
+				return false;
+			}
+			for (Element ancestor = element.parent(); ancestor != null && step > 0; ancestor = ancestor.parent()) {
+				if (steps[step - 1].matches(root, ancestor)) {
+					step--;
+				}
+				if (ancestor == root) {
+					break;
+				}
+			}
+			return step == 0;
+		}
+	}
+
+	Field getField() {
+		return field;
+	}
+
+	/**
+	 * @param root the page or a part of it
+	 * @return all matching elements below root
+	 */
+	Elements all(Element root) {
+		return Collector.collect(evaluator, root);
+	}
+
+	/**
+	 * @param root the page or a part of it
+	 * @return the first matching element below root, or null
+	 */
+	Element first(Element root) {
+		return first(root, root);
+	}
+
+	// depth-first like all(), but stops at the first match
+	private Element first(Element root, Element element) {
+		if (evaluator.matches(root, element)) {
+			return element;
+		}
+		for (Node child : element.childNodes()) {
+			if (child instanceof Element) {
+				Element found = first(root, (Element) child);
+				if (found != null) {
+					return found;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param root the page or a part of it
+	 * @return the value: the text of the first matching element, or the first group of the regex in that text; null if not found
+	 */
+	String text(Element root) {
+		Element element = first(root);
+		if (element == null) {
+			return null;
+		}
+		String text = ownText ? element.ownText() : element.text();
+		return pattern == null ? text : group(text);
+	}
+
+	/**
+	 * @param text a text
+	 * @return a matcher of the regex that found something in the text, or null
+	 */
+	Matcher find(String text) {
+		if (text == null) {
+			return null;
+		}
+		Matcher matcher = pattern.matcher(text);
+		return matcher.find() ? matcher : null;
+	}
+
+	/**
+	 * @param text a text
+	 * @return the first group of the regex in the text, or null
+	 */
+	String group(String text) {
+		Matcher matcher = find(text);
+		return matcher == null ? null : matcher.group(1);
+	}
+
+	@Override
+	public String toString() {
+		return field + "[" + (selector == null ? "" : selector) + (pattern == null ? "" : " ~ " + pattern.pattern()) + "]";
+	}
+}
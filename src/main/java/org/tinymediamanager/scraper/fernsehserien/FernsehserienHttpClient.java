@@ -0,0 +1,469 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.SocketException;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The class FernsehserienHttpClient does every request to fernsehserien.de. Responses are compressed if the site likes to, and connections
+ * are kept alive and reused as long as the body is read and closed (HttpURLConnection pools them per host). If we still have the parsed
+ * result of a page together with its validators, the request is conditional (If-None-Match/If-Modified-Since); on 304 Not Modified the
+ * caller reuses what it parsed before and neither downloads nor parses the page again. Pages that are asked for again while they are still
+ * being downloaded (e.g. when the episodes of a season are scraped in parallel) are only downloaded once. All requests go through a
+ * HostRateLimiter; throttled requests (429, 503, reset connections) are retried after the pause the limiter imposes.
+ *
+ * The searches (fast search and /suche/) have no validators; like CachedUrl did for them, their pages are kept in memory for a minute, so
+ * searching the same title again (e.g. from the search dialog and the scrape right after it) doesn't go to the site.
+ */
+class FernsehserienHttpClient {
+	private static final Logger LOGGER = LoggerFactory.getLogger(FernsehserienHttpClient.class);
+	private static final FernsehserienHttpClient INSTANCE = new FernsehserienHttpClient(HostRateLimiter.create());
+	private static final String USER_AGENT = "Mozilla/5.0 (compatible; tinyMediaManager fernsehserien scraper)";
+	// connect/read timeout in ms, if the budget of the scrape allows it
+	private static final int TIMEOUT = 20000;
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	// tries of a request that is throttled by the site
+	private static final int MAX_ATTEMPTS = 4;
+	// how long and how many search pages are kept in memory
+	static final long RECENT_TTL = TimeUnit.MINUTES.toMillis(1);
+	static final int MAX_RECENT = 100;
+
+	private final HostRateLimiter limiter;
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+	private final AtomicLong bytesDownloaded = new AtomicLong();
+	private final AtomicLong bytesAvoided = new AtomicLong();
+	private final AtomicLong parsesAvoided = new AtomicLong();
+	// the responses that were read and closed; totalMillis is their time, retries and failures aren't in it
+	private final AtomicLong responses = new AtomicLong();
+	private final AtomicLong totalMillis = new AtomicLong();
+	private final AtomicLong maxMillis = new AtomicLong();
+	private final SingleFlight<Page> pages = new SingleFlight<>();
+	private final RecentCache<Page> recent = new RecentCache<>(MAX_RECENT, RECENT_TTL);
+
+	FernsehserienHttpClient(HostRateLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	static FernsehserienHttpClient getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * The answer to a request. The body has to be closed (or the response).
+	 */
+	class Response implements Closeable {
+		private final String url;
+		private final long start;
+		private final int status;
+		// what came over the wire, before decompression
+		private final CountingInputStream raw;
+		private final InputStream body;
+		private final PageValidators validators;
+		private final ScraperEvents.Event event;
+		private final long scrapeId;
+		private boolean closed;
+
+		Response(String url, long start, int status, CountingInputStream raw, InputStream body, PageValidators validators,
+				ScraperEvents.Event event, long scrapeId) {
+			this.url = url;
+			this.start = start;
+			this.status = status;
+			this.raw = raw;
+			this.body = body;
+			this.validators = validators;
+			this.event = event;
+			this.scrapeId = scrapeId;
+		}
+
+		boolean isNotModified() {
+			return status == HttpURLConnection.HTTP_NOT_MODIFIED;
+		}
+
+		/**
+		 * @return the body, or null for 304 Not Modified
+		 */
+		InputStream getBody() {
+			return body;
+		}
+
+		/**
+		 * @return the validators of the page; the length is the number of bytes downloaded so far
+		 */
+		PageValidators getValidators() {
+			if (raw != null) {
+				validators.length = raw.getByteCount();
+			}
+			return validators;
+		}
+
+		/**
+		 * @return the ms since the request was sent
+		 */
+		long getMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				if (body != null) {
+					body.close();
+				}
+			}
+			finally {
+				long bytes = raw == null ? 0 : raw.getByteCount();
+				bytesDownloaded.addAndGet(bytes);
+				long millis = getMillis();
+				ScraperMetrics.getInstance().recordStage(ScraperMetrics.FETCH, start);
+				event.commit(scrapeId, ScraperEvents.getPageKind(url), url, status, bytes, isNotModified(), null);
+				responses.incrementAndGet();
+				totalMillis.addAndGet(millis);
+				long max = maxMillis.get();
+				while (millis > max && !maxMillis.compareAndSet(max, millis)) {
+					max = maxMillis.get();
+				}
+				LOGGER.debug("FERNSEHSERIEN: " + url + " -> " + status + ", " + bytes + " bytes in " + millis + " ms");
+			}
+		}
+	}
+
+	/**
+	 * A downloaded page; the same page is handed to everybody who asked for it at the same time.
+	 */
+	static class Page {
+		private final byte[] body;
+		private final PageValidators validators;
+
+		Page(byte[] body, PageValidators validators) {
+			this.body = body;
+			this.validators = validators;
+		}
+
+		boolean isNotModified() {
+			return body == null;
+		}
+
+		/**
+		 * @return the body, or null for 304 Not Modified
+		 */
+		InputStream getBody() {
+			return body == null ? null : new ByteArrayInputStream(body);
+		}
+
+		/**
+		 * @return the body, or null for 304 Not Modified; not a copy, so don't change it
+		 */
+		byte[] getBytes() {
+			return body;
+		}
+
+		PageValidators getValidators() {
+			return validators;
+		}
+	}
+
+	/**
+	 * fetch a whole page. If the same page (same url, language and validators) is already being fetched we wait for that.
+	 *
+	 * @param url the url of the page
+	 * @param acceptLanguage the Accept-Language header
+	 * @param validators the validators of the page we already parsed, or null
+	 * @param context the scrape the request belongs to
+	 * @return the page; not modified only if validators were given
+	 * @throws Exception if the site answered with an error or couldn't be reached, or there was no time left
+	 */
+	Page getPage(String url, String acceptLanguage, PageValidators validators, ScrapeContext context) throws Exception {
+		return getPage(url, acceptLanguage, validators, context, TIMEOUT);
+	}
+
+	private Page getPage(final String url, final String acceptLanguage, final PageValidators validators, final ScrapeContext context,
+			final int timeout) throws Exception {
+		String key = url + "|" + acceptLanguage;
+		if (validators != null) {
+			key += "|" + validators.etag + "|" + validators.lastModified;
+		}
+		return pages.execute(key, new Callable<Page>() {
+			@Override
+			public Page call() throws Exception {
+				try (Response response = get(url, acceptLanguage, validators, context, timeout)) {
+					if (response.isNotModified()) {
+						return new Page(null, response.getValidators());
+					}
+					byte[] body = IOUtils.toByteArray(response.getBody());
+					return new Page(body, response.getValidators());
+				}
+			}
+		}, context);
+	}
+
+	Page getRecentPage(String url, String acceptLanguage, ScrapeContext context) throws Exception {
+		return getRecentPage(url, acceptLanguage, context, TIMEOUT);
+	}
+
+	/**
+	 * fetch a page that doesn't change often and has no validators (the full search). If it was fetched less than a minute ago, it's taken
+	 * from memory. Only for pages that are read completely anyway; the fast search keeps the results instead, so that it can stop reading
+	 * the response early.
+	 *
+	 * @param url the url of the page
+	 * @param acceptLanguage the Accept-Language header
+	 * @param context the scrape the request belongs to
+	 * @param timeout the connect/read timeout in ms, if the budget of the scrape allows it
+	 * @return the page
+	 * @throws Exception if the site answered with an error or couldn't be reached, or there was no time left
+	 */
+	Page getRecentPage(String url, String acceptLanguage, ScrapeContext context, int timeout) throws Exception {
+		String key = url + "|" + acceptLanguage;
+		Page page = recent.get(key);
+		if (page != null) {
+			ScraperEvents.FETCH.begin().commit(context.getId(), ScraperEvents.getPageKind(url), url, HttpURLConnection.HTTP_OK, 0L, true, null);
+			return page;
+		}
+		page = getPage(url, acceptLanguage, null, context, timeout);
+		recent.put(key, page);
+		return page;
+	}
+
+	/**
+	 * forget the search pages kept in memory
+	 */
+	void clearRecent() {
+		recent.clear();
+	}
+
+	/**
+	 * @return how many search pages were taken from memory
+	 */
+	long getRecentHits() {
+		return recent.getHits();
+	}
+
+	/**
+	 * @return how many requests weren't sent because the same page was being fetched already
+	 */
+	long getCollapsed() {
+		return pages.getCollapsed();
+	}
+
+	Response get(String url, String acceptLanguage, PageValidators validators, ScrapeContext context) throws IOException, TimeoutException {
+		return get(url, acceptLanguage, validators, context, TIMEOUT);
+	}
+
+	/**
+	 * fetch a page
+	 *
+	 * @param url the url of the page
+	 * @param acceptLanguage the Accept-Language header
+	 * @param validators the validators of the page we already parsed, or null
+	 * @param context the scrape the request belongs to
+	 * @param timeout the connect/read timeout in ms, if the budget of the scrape allows it
+	 * @return the response; 200 or 304 (only if validators were given)
+	 * @throws IOException if the site answered with an error or couldn't be reached, or still throttled us after a few retries
+	 * @throws TimeoutException if there's no time left for the request
+	 */
+	Response get(String url, String acceptLanguage, PageValidators validators, ScrapeContext context, int timeout)
+			throws IOException, TimeoutException {
+		ScraperEvents.Event event = ScraperEvents.FETCH.begin();
+		try {
+			return send(url, acceptLanguage, validators, context, timeout, event);
+		}
+		catch (IOException | TimeoutException e) {
+			ScraperMetrics.getInstance().recordError(ScraperMetrics.FETCH, e);
+			event.commit(context.getId(), ScraperEvents.getPageKind(url), url, 0, 0L, false, ScraperMetrics.getCause(e));
+			throw e;
+		}
+	}
+
+	private Response send(String url, String acceptLanguage, PageValidators validators, ScrapeContext context, int timeout,
+			ScraperEvents.Event event) throws IOException, TimeoutException {
+		String host = new URL(url).getHost();
+		long start = System.nanoTime();
+		HttpURLConnection connection;
+		int status;
+		for (int attempt = 0;; attempt++) {
+			try {
+				limiter.acquire(host, context);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("interrupted while waiting for " + host);
+			}
+			context.checkDeadline(url);
+			connection = open(url, acceptLanguage, validators, context, timeout);
+			requests.incrementAndGet();
+			try {
+				status = connection.getResponseCode();
+			}
+			catch (SocketException e) {
+				// connection reset or refused: the site might be dropping us
+				if (attempt + 1 >= MAX_ATTEMPTS) {
+					throw e;
+				}
+				limiter.throttled(host, 0, attempt);
+				continue;
+			}
+			if (status != HTTP_TOO_MANY_REQUESTS && status != HttpURLConnection.HTTP_UNAVAILABLE) {
+				break;
+			}
+			long retryAfter = HostRateLimiter.parseRetryAfter(connection.getHeaderField("Retry-After"));
+			drain(connection.getErrorStream());
+			if (attempt + 1 >= MAX_ATTEMPTS) {
+				throw new IOException("HTTP " + status + " for " + url + ", " + MAX_ATTEMPTS + " times in a row");
+			}
+			limiter.throttled(host, retryAfter, attempt);
+		}
+
+		PageValidators newValidators = new PageValidators(connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+		if (status == HttpURLConnection.HTTP_NOT_MODIFIED && validators != null) {
+			notModified.incrementAndGet();
+			// the (empty) body has to be consumed, otherwise the connection can't be reused
+			drain(connection.getInputStream());
+			if (!newValidators.isPresent()) {
+				newValidators = validators;
+			}
+			newValidators.length = validators.length;
+			Response response = new Response(url, start, status, null, null, newValidators, event, context.getId());
+			response.close();
+			return response;
+		}
+		if (status != HttpURLConnection.HTTP_OK) {
+			drain(connection.getErrorStream());
+			throw new IOException("HTTP " + status + " for " + url);
+		}
+
+		CountingInputStream raw = new CountingInputStream(connection.getInputStream());
+		InputStream body = raw;
+		String encoding = connection.getContentEncoding();
+		if ("gzip".equalsIgnoreCase(encoding)) {
+			body = new GZIPInputStream(raw);
+		}
+		else if ("deflate".equalsIgnoreCase(encoding)) {
+			body = new InflaterInputStream(raw);
+		}
+		return new Response(url, start, status, raw, body, newValidators, event, context.getId());
+	}
+
+	private static HttpURLConnection open(String url, String acceptLanguage, PageValidators validators, ScrapeContext context, int timeout)
+			throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(context.timeoutMillis(timeout));
+		connection.setReadTimeout(context.timeoutMillis(timeout));
+		connection.setRequestProperty("User-Agent", USER_AGENT);
+		connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+		if (StringUtils.isNotBlank(acceptLanguage)) {
+			connection.setRequestProperty("Accept-Language", acceptLanguage);
+		}
+		if (validators != null) {
+			if (StringUtils.isNotBlank(validators.etag)) {
+				connection.setRequestProperty("If-None-Match", validators.etag);
+			}
+			if (StringUtils.isNotBlank(validators.lastModified)) {
+				connection.setRequestProperty("If-Modified-Since", validators.lastModified);
+			}
+		}
+		return connection;
+	}
+
+	private static void drain(InputStream is) throws IOException {
+		if (is != null) {
+			try {
+				IOUtils.skip(is, Long.MAX_VALUE);
+			}
+			finally {
+				is.close();
+			}
+		}
+	}
+
+	/**
+	 * count a page that didn't have to be downloaded and parsed again
+	 *
+	 * @param validators the validators of the page
+	 */
+	void recordReuse(PageValidators validators) {
+		parsesAvoided.incrementAndGet();
+		bytesAvoided.addAndGet(validators.length);
+		LOGGER.debug("reused a parsed page; " + this);
+	}
+
+	long getRequests() {
+		return requests.get();
+	}
+
+	long getNotModified() {
+		return notModified.get();
+	}
+
+	long getBytesDownloaded() {
+		return bytesDownloaded.get();
+	}
+
+	long getBytesAvoided() {
+		return bytesAvoided.get();
+	}
+
+	long getParsesAvoided() {
+		return parsesAvoided.get();
+	}
+
+	/**
+	 * @return the average ms from sending a request until its response was closed
+	 */
+	long getAverageMillis() {
+		long count = responses.get();
+		return count == 0 ? 0 : totalMillis.get() / count;
+	}
+
+	long getMaxMillis() {
+		return maxMillis.get();
+	}
+
+	HostRateLimiter getLimiter() {
+		return limiter;
+	}
+
+	@Override
+	public String toString() {
+		return "FernsehserienHttpClient[requests=" + getRequests() + ", notModified=" + getNotModified() + ", recentHits=" + getRecentHits() + ", bytesDownloaded="
+				+ getBytesDownloaded() + ", bytesAvoided=" + getBytesAvoided() + ", parsesAvoided=" + getParsesAvoided() + ", collapsed=" + getCollapsed() + ", averageMillis="
+				+ getAverageMillis() + ", maxMillis=" + getMaxMillis() + "]";
+	}
+}
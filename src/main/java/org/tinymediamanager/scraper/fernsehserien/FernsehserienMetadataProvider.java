@@ -16,10 +16,13 @@
 package org.tinymediamanager.scraper.fernsehserien;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.tinymediamanager.scraper.MediaMetadata;
@@ -36,6 +39,7 @@ import org.tinymediamanager.scraper.mediaprovider.IMovieMetadataProvider;
 import org.tinymediamanager.scraper.mediaprovider.ITvShowMetadataProvider;
 
 import net.xeoh.plugins.base.annotations.PluginImplementation;
+import net.xeoh.plugins.base.annotations.events.Shutdown;
 
 /**
  * The Class FernsehserienMetadataProvider. A meta data provider for the site fernsehserien.de
@@ -47,16 +51,36 @@ public class FernsehserienMetadataProvider implements ITvShowMetadataProvider {
 	static final MediaProviderInfo providerInfo = createMediaProviderInfo();
 
 	private FernsehserienSiteDefinition fernsehserienSite;
+	private String baseUrl;
 
 	public FernsehserienMetadataProvider() {
+		this(FernsehserienSiteDefinition.FERNSEHSERIEN_COM.getSite());
+	}
+
+	/**
+	 * @param baseUrl the address of the site with a trailing /, e.g. of a local server with recorded pages
+	 */
+	FernsehserienMetadataProvider(String baseUrl) {
 		fernsehserienSite = FernsehserienSiteDefinition.FERNSEHSERIEN_COM;
+		this.baseUrl = baseUrl;
 
 		// configure/load settings
 		providerInfo.getConfig().addBoolean("useTheTvDb", true);
 		providerInfo.getConfig().addBoolean("useImdb", true);
 		providerInfo.getConfig().addBoolean("useTmdb", true);
+		providerInfo.getConfig().addBoolean("prefetchSearchResults", false);
+		providerInfo.getConfig().addBoolean("useLocalStore", true);
+		providerInfo.getConfig().addText("searchTimeout", "30");
+		providerInfo.getConfig().addText("scrapeTimeout", "60");
+		providerInfo.getConfig().addText("siteThreads", "8");
+		providerInfo.getConfig().addText("providerThreads", "4");
+		providerInfo.getConfig().addText("maxRequestsPerSecond", "8");
+		providerInfo.getConfig().addText("rampUpSeconds", "10");
+		providerInfo.getConfig().addSelect("executorMode", new String[] { ScraperExecutor.MODE_THREADS, ScraperExecutor.MODE_VIRTUAL },
+				ScraperExecutor.MODE_THREADS);
 
 		providerInfo.getConfig().load();
+		ScraperMetrics.register();
 	}
 
 	private static MediaProviderInfo createMediaProviderInfo() {
@@ -67,6 +91,17 @@ public class FernsehserienMetadataProvider implements ITvShowMetadataProvider {
 		return mpi;
 	}
 
+	/**
+	 * stop the background threads, forget the other providers and close the local store when the plugin is unloaded
+	 */
+	@Shutdown
+	public void shutdown() {
+		ScraperExecutor.shutdownAll();
+		ProviderRegistry.getInstance().invalidate();
+		MetadataStore.closeDefault();
+		ScraperMetrics.unregister();
+	}
+
 	@Override
 	public MediaProviderInfo getProviderInfo() {
 		return providerInfo;
@@ -76,15 +111,28 @@ public class FernsehserienMetadataProvider implements ITvShowMetadataProvider {
 	public MediaMetadata getMetadata(MediaScrapeOptions options) throws Exception {
 		LOGGER.debug("****FERNSEHSERIEN: FernsehserienMetadataProvider.getMetadata() " + options.toString());
 
-		switch (options.getType()) {
-			case TV_SHOW:
-				return (new FernsehserienTvShowParser(fernsehserienSite)).getTvShowMetadata("", options);
-
-			case TV_EPISODE:
-				return (new FernsehserienTvShowParser(fernsehserienSite)).getEpisodeMetadata("", options);
-
-			default:
-				throw new UnsupportedMediaTypeException(options.getType());
+		String operation = null;
+		long start = System.nanoTime();
+		try {
+			switch (options.getType()) {
+				case TV_SHOW:
+					operation = ScraperMetrics.SHOW;
+					return newParser().getTvShowMetadata("", options);
+
+				case TV_EPISODE:
+					operation = ScraperMetrics.EPISODE;
+					return newParser().getEpisodeMetadata("", options);
+
+				default:
+					throw new UnsupportedMediaTypeException(options.getType());
+			}
+		}
+		catch (Exception e) {
+			recordError(operation, e);
+			throw e;
+		}
+		finally {
+			recordOperation(operation, start);
 		}
 	}
 
@@ -94,7 +142,17 @@ public class FernsehserienMetadataProvider implements ITvShowMetadataProvider {
 
 		switch (query.getMediaType()) {
 			case TV_SHOW:
-				return (new FernsehserienTvShowParser(fernsehserienSite)).search(query);
+				long start = System.nanoTime();
+				try {
+					return newParser().search(query);
+				}
+				catch (Exception e) {
+					recordError(ScraperMetrics.SEARCH, e);
+					throw e;
+				}
+				finally {
+					recordOperation(ScraperMetrics.SEARCH, start);
+				}
 
 			default:
 				throw new UnsupportedMediaTypeException(query.getMediaType());
@@ -104,7 +162,59 @@ public class FernsehserienMetadataProvider implements ITvShowMetadataProvider {
 	@Override
 	public List<MediaEpisode> getEpisodeList(MediaScrapeOptions options) throws Exception {
 		LOGGER.debug("getEpisodeList() " + options.toString());
-		return new FernsehserienTvShowParser(fernsehserienSite).getEpisodeList(options);
+		long start = System.nanoTime();
+		try {
+			return newParser().getEpisodeList(options);
+		}
+		catch (Exception e) {
+			recordError(ScraperMetrics.EPISODE_LIST, e);
+			throw e;
+		}
+		finally {
+			recordOperation(ScraperMetrics.EPISODE_LIST, start);
+		}
+	}
+
+	/*
+	 * the operations of other media types aren't timed, they fail right away
+	 */
+	private static void recordOperation(String operation, long start) {
+		if (operation != null) {
+			ScraperMetrics.getInstance().recordOperation(operation, start);
+		}
+	}
+
+	private static void recordError(String operation, Exception e) {
+		if (operation != null) {
+			ScraperMetrics.getInstance().recordError(operation, e);
+		}
+	}
+
+	/*
+	 * reads a numeric setting; falls back to the default for empty or garbled values
+	 */
+	static int getConfigValueAsInt(String key, int defaultValue) {
+		return NumberUtils.toInt(providerInfo.getConfig().getValue(key), defaultValue);
+	}
+
+	/**
+	 * get the metadata of several episodes of a TV show at once. The episode guide is read only once and the episode pages are loaded
+	 * concurrently, so scraping a whole season costs one request per episode plus one for the guide.
+	 *
+	 * @param fernsehserienId the id of the TV show
+	 * @param episodes the wanted season/episode numbers
+	 * @param options the scrape options (language and country)
+	 * @return the metadata of all episodes that were found, ordered by season and episode
+	 * @throws Exception
+	 */
+	public Map<EpisodeNumber, MediaMetadata> getEpisodesMetadata(String fernsehserienId, Set<EpisodeNumber> episodes, MediaScrapeOptions options)
+			throws Exception {
+		LOGGER.debug("getEpisodesMetadata() " + fernsehserienId + " " + episodes.size() + " episodes");
+		return newParser().getEpisodesMetadata(fernsehserienId, episodes, options);
+	}
+
+	private FernsehserienTvShowParser newParser() {
+		return new FernsehserienTvShowParser(fernsehserienSite, baseUrl, ScrapeContext.create());
 	}
 
 	static void processMediaArt(MediaMetadata md, MediaArtworkType type, String image) {
@@ -133,68 +243,6 @@ public class FernsehserienMetadataProvider implements ITvShowMetadataProvider {
 	 * Maps scraper Genres to internal TMM genres
 	 */
 	static MediaGenres getTmmGenre(String genre) {
-		MediaGenres g = null;
-		if (StringUtils.isBlank(genre)) {
-			return null;
-		}
-		// @formatter:off
-		else if (genre.equals("Action")) {
-			g = MediaGenres.ACTION;
-		} else if (genre.equals("Adventure")) {
-			g = MediaGenres.ADVENTURE;
-		} else if (genre.equals("Animation")) {
-			g = MediaGenres.ANIMATION;
-		} else if (genre.equals("Biography")) {
-			g = MediaGenres.BIOGRAPHY;
-		} else if (genre.equals("Comedy")) {
-			g = MediaGenres.COMEDY;
-		} else if (genre.equals("Crime")) {
-			g = MediaGenres.CRIME;
-		} else if (genre.equals("Documentary")) {
-			g = MediaGenres.DOCUMENTARY;
-		} else if (genre.equals("Drama")) {
-			g = MediaGenres.DRAMA;
-		} else if (genre.equals("Family")) {
-			g = MediaGenres.FAMILY;
-		} else if (genre.equals("Fantasy")) {
-			g = MediaGenres.FANTASY;
-		} else if (genre.equals("Film-Noir")) {
-			g = MediaGenres.FILM_NOIR;
-		} else if (genre.equals("Game-Show")) {
-			g = MediaGenres.GAME_SHOW;
-		} else if (genre.equals("History")) {
-			g = MediaGenres.HISTORY;
-		} else if (genre.equals("Horror")) {
-			g = MediaGenres.HORROR;
-		} else if (genre.equals("Music")) {
-			g = MediaGenres.MUSIC;
-		} else if (genre.equals("Musical")) {
-			g = MediaGenres.MUSICAL;
-		} else if (genre.equals("Mystery")) {
-			g = MediaGenres.MYSTERY;
-		} else if (genre.equals("News")) {
-			g = MediaGenres.NEWS;
-		} else if (genre.equals("Reality-TV")) {
-			g = MediaGenres.REALITY_TV;
-		} else if (genre.equals("Romance")) {
-			g = MediaGenres.ROMANCE;
-		} else if (genre.equals("Sci-Fi")) {
-			g = MediaGenres.SCIENCE_FICTION;
-		} else if (genre.equals("Sport")) {
-			g = MediaGenres.SPORT;
-		} else if (genre.equals("Talk-Show")) {
-			g = MediaGenres.TALK_SHOW;
-		} else if (genre.equals("Thriller")) {
-			g = MediaGenres.THRILLER;
-		} else if (genre.equals("War")) {
-			g = MediaGenres.WAR;
-		} else if (genre.equals("Western")) {
-			g = MediaGenres.WESTERN;
-		}
-		// @formatter:on
-		if (g == null) {
-			g = MediaGenres.getGenre(genre);
-		}
-		return g;
+		return GenreMapper.getGenre(genre);
 	}
 }
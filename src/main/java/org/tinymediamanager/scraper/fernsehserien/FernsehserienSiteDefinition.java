@@ -16,45 +16,84 @@
 
 package org.tinymediamanager.scraper.fernsehserien;
 
+import static org.tinymediamanager.scraper.fernsehserien.ExtractionRule.match;
+import static org.tinymediamanager.scraper.fernsehserien.ExtractionRule.select;
+import static org.tinymediamanager.scraper.fernsehserien.ExtractionRule.selectOwnText;
+
 import java.nio.charset.Charset;
+import java.util.EnumMap;
+import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
+import org.tinymediamanager.scraper.fernsehserien.ExtractionRule.Field;
 
 /**
- * The Enum org.tinymediamanager.scraper.fernsehserien.FernsehserienSiteDefinition.
+ * The Enum org.tinymediamanager.scraper.fernsehserien.FernsehserienSiteDefinition. Besides the address it says where the fields are found on
+ * the pages of the site (see ExtractionRule), which parts of a show page hold them (see RegionParser) and what the headings and labels of
+ * the cast and crew are called.
  */
 public enum FernsehserienSiteDefinition {
-	FERNSEHSERIEN_COM("https://www.fernsehserien.de/", "UTF-8", "Tagline", "Genre", "Runtime", "Production Companies", "Writing credits", "Certification",
-			"Release Date", "Produced by");
-
-	private FernsehserienSiteDefinition(String site, String charsetName, String tagline, String genre, String runtime, String productionCompanies,
-	                                    String writers, String certification, String releaseDate, String producers) {
+	FERNSEHSERIEN_COM("https://www.fernsehserien.de/", "UTF-8", "Cast", "Crew", "Produktion", "Regie", "Drehbuch",
+			new String[] { "serie-header", "serie-produktionsjahre", "serie-infos-erstausstrahlung", "serie-info" },
+			select(Field.SEARCH_RESULT, ".suchergebnis"),
+			select(Field.SEARCH_LINK, "a[href]"),
+			select(Field.SEARCH_TITLE, ".suchergebnis-titel"),
+			select(Field.SEARCH_BANNER, ".suchergebnis-bild img"),
+			selectOwnText(Field.SEARCH_YEAR, ".suchergebnis-wannwo", "([0-9]+)"),
+			select(Field.SHOW_TITLE, ".serie-header .infos h1"),
+			select(Field.SHOW_PRODUCTION, ".serie-produktionsjahre"),
+			select(Field.SHOW_COUNTRY, "abbr"),
+			match(Field.SHOW_YEARS, "([0-9]{4})(?:\\s*–\\s*([0-9]{4}))?"),
+			match(Field.SHOW_ORIGINAL_TITLE, "\\(([^)]+)\\)"),
+			select(Field.SHOW_FIRST_AIRED, ".serie-infos-erstausstrahlung"),
+			select(Field.SHOW_PLOT, "#serie-info"),
+			// not checked on the real site yet, see FernsehserienMetadataProviderTest.testTvShowScrapeLive()
+			select(Field.SHOW_GENRE, ".serie-header .genrepillen li").unverified(),
+			select(Field.EPISODE_ORIGINAL_TITLE, ".episode-output-originaltitel", "\\(([^)]+)\\)"),
+			select(Field.EPISODE_RUNTIME, ".episode-output-instaffel", "\\(([0-9]+)[^)]*\\)"),
+			select(Field.EPISODE_PLOT, ".episode-output-inhalt p"),
+			select(Field.EPISODE_THUMB, ".episodenguide-episode-img-div img"),
+			select(Field.CAST_TABLE, ".cast-crew"),
+			select(Field.CAST_ROW, ".ep-hover"),
+			select(Field.CAST_NAME, ".schauspieler"),
+			select(Field.CAST_ROLE, ".rolle"),
+			select(Field.CAST_REMARK, ".bemerkung"),
+			select(Field.CAST_IMAGE, ".bild img"),
+			match(Field.DATE, "([0-9]{2})\\.([0-9]{2})\\.([0-9]{4})"));
+
+	private FernsehserienSiteDefinition(String site, String charsetName, String castHeading, String crewHeading, String producerLabel,
+	                                    String directorLabel, String writerLabel, String[] showPageRegions, ExtractionRule... rules) {
 		this.site = site;
 		if (StringUtils.isBlank(charsetName)) {
 			this.charset = Charset.defaultCharset();
 		} else {
 			this.charset = Charset.forName(charsetName);
 		}
-		this.tagline = tagline;
-		this.genre = genre;
-		this.runtime = runtime;
-		this.productionCompanies = productionCompanies;
-		this.writer = writers;
-		this.certification = certification;
-		this.releaseDate = releaseDate;
-		this.producers = producers;
+		this.castHeading = castHeading;
+		this.crewHeading = crewHeading;
+		this.producerLabel = producerLabel;
+		this.directorLabel = directorLabel;
+		this.writerLabel = writerLabel;
+		this.showPageParser = new RegionParser(showPageRegions);
+		for (ExtractionRule rule : rules) {
+			this.rules.put(rule.getField(), rule);
+		}
+		for (Field field : Field.values()) {
+			if (!this.rules.containsKey(field)) {
+				throw new IllegalArgumentException("no rule for " + field + " on " + site);
+			}
+		}
 	}
 
 	private String site;
 	private Charset charset;
-	private String tagline;
-	private String genre;
-	private String runtime;
-	private String productionCompanies;
-	private String writer;
-	private String certification;
-	private String releaseDate;
-	private String producers;
+	private String castHeading;
+	private String crewHeading;
+	private String producerLabel;
+	private String directorLabel;
+	private String writerLabel;
+	private RegionParser showPageParser;
+	private final Map<Field, ExtractionRule> rules = new EnumMap<>(Field.class);
 
 	public String getSite() {
 		return site;
@@ -64,36 +103,41 @@ public enum FernsehserienSiteDefinition {
 		return charset;
 	}
 
-	public String getTagline() {
-		return tagline;
-	}
-
-	public String getGenre() {
-		return genre;
+	/**
+	 * @return the heading of the table with the actors
+	 */
+	public String getCastHeading() {
+		return castHeading;
 	}
 
-	public String getRuntime() {
-		return runtime;
+	/**
+	 * @return the heading of the table with the crew
+	 */
+	public String getCrewHeading() {
+		return crewHeading;
 	}
 
-	public String getProductionCompanies() {
-		return productionCompanies;
+	public String getProducerLabel() {
+		return producerLabel;
 	}
 
-	public String getWriter() {
-		return writer;
+	public String getDirectorLabel() {
+		return directorLabel;
 	}
 
-	public String getCertification() {
-		return certification;
+	public String getWriterLabel() {
+		return writerLabel;
 	}
 
-	public String getReleaseDate() {
-		return releaseDate;
+	/**
+	 * @return the parser for show pages; it keeps only the elements with the classes or ids the SHOW_ rules read
+	 */
+	RegionParser getShowPageParser() {
+		return showPageParser;
 	}
 
-	public String getProducers() {
-		return producers;
+	ExtractionRule getRule(Field field) {
+		return rules.get(field);
 	}
 
 	public String toString() {
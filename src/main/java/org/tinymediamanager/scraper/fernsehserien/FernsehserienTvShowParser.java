@@ -18,17 +18,16 @@ package org.tinymediamanager.scraper.fernsehserien;
 import static org.tinymediamanager.scraper.fernsehserien.FernsehserienMetadataProvider.cleanString;
 import static org.tinymediamanager.scraper.fernsehserien.FernsehserienMetadataProvider.providerInfo;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
 import java.net.InterfaceAddress;
-import java.net.URI;
 import java.net.URLEncoder;
-import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import com.google.gson.Gson;
-import org.apache.commons.io.IOUtils;
+import com.google.gson.stream.MalformedJsonException;
 import org.apache.commons.lang3.LocaleUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jsoup.Jsoup;
@@ -42,7 +41,7 @@ import org.tinymediamanager.scraper.MediaScrapeOptions;
 import org.tinymediamanager.scraper.MediaSearchOptions;
 import org.tinymediamanager.scraper.MediaSearchResult;
 import org.tinymediamanager.scraper.entities.*;
-import org.tinymediamanager.scraper.http.CachedUrl;
+import org.tinymediamanager.scraper.fernsehserien.ExtractionRule.Field;
 import org.tinymediamanager.scraper.util.MetadataUtil;
 
 /**
@@ -51,15 +50,58 @@ import org.tinymediamanager.scraper.util.MetadataUtil;
  */
 public class FernsehserienTvShowParser {
 	private static final Logger LOGGER = LoggerFactory.getLogger(org.tinymediamanager.scraper.fernsehserien.FernsehserienTvShowParser.class);
-	private static final ExecutorService executor = Executors.newFixedThreadPool(4);
+	// parsed episode guides shared by findEpisode and getEpisodeList
+	static final EpisodeGuideCache GUIDE_CACHE = new EpisodeGuideCache(50, TimeUnit.HOURS.toMillis(1));
+	// episode guides that are being read right now
+	private static final SingleFlight<EpisodeGuide> GUIDE_FLIGHTS = new SingleFlight<>();
+	// the decoded fast searches of the last minute, by url and Accept-Language
+	static final RecentCache<List<SearchResult>> FAST_SEARCHES = new RecentCache<>(FernsehserienHttpClient.MAX_RECENT,
+			FernsehserienHttpClient.RECENT_TTL);
+	// the results of tvdb, tmdb and imdb we accepted for a title; misses are searched again after an hour
+	static final ProviderMatchCache MATCH_CACHE = new ProviderMatchCache(1000, TimeUnit.DAYS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+	// how long results from the local store are used without asking the site again
+	private static final long SHOW_MAX_AGE = TimeUnit.DAYS.toMillis(7);
+	private static final long EPISODE_MAX_AGE = TimeUnit.DAYS.toMillis(30);
+	private static final long GUIDE_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+	// connect/read timeout in ms of the fast search, if the budget of the scrape allows it
+	private static final int FAST_SEARCH_TIMEOUT = 10000;
+	// Accept-Language headers by language and country
+	private static final ConcurrentMap<String, String> ACCEPT_LANGUAGES = new ConcurrentHashMap<>();
+	private static final ScraperMetrics METRICS = ScraperMetrics.getInstance();
 
 	private FernsehserienSiteDefinition fernsehserienSite;
 
+	// the address of the site with a trailing /; another one for a local server with recorded pages
+	private final String baseUrl;
+
 	private final MediaType type;
 
+	private final ScrapeContext context;
+
 	public FernsehserienTvShowParser(FernsehserienSiteDefinition fernsehserienSite) {
+		this(fernsehserienSite, ScrapeContext.create());
+	}
+
+	FernsehserienTvShowParser(FernsehserienSiteDefinition fernsehserienSite, ScrapeContext context) {
+		this(fernsehserienSite, fernsehserienSite.getSite(), context);
+	}
+
+	FernsehserienTvShowParser(FernsehserienSiteDefinition fernsehserienSite, String baseUrl, ScrapeContext context) {
 		this.type = MediaType.TV_SHOW;
 		this.fernsehserienSite = fernsehserienSite;
+		this.baseUrl = baseUrl;
+		this.context = context;
+	}
+
+	/**
+	 * @return a parser for the same site with a budget of its own, e.g. for loading a search result later
+	 */
+	FernsehserienTvShowParser newScrape() {
+		return new FernsehserienTvShowParser(fernsehserienSite, baseUrl, ScrapeContext.create());
+	}
+
+	ScrapeContext getContext() {
+		return context;
 	}
 
 	protected Logger getLogger() {
@@ -70,6 +112,10 @@ public class FernsehserienTvShowParser {
 		return fernsehserienSite;
 	}
 
+	String getBaseUrl() {
+		return baseUrl;
+	}
+
 	/**
 	 * do the search according to the type
 	 *
@@ -98,8 +144,18 @@ public class FernsehserienTvShowParser {
 		List<MediaSearchResult> result = tryFastSearch(query, searchTerm);
 
 		if (result.size() >= 10) {
-			// we got too many results. Try the extended search
-			result = tryFullSearch(query, searchTerm);
+			// we got too many results. Try the extended search, but keep what we have if that fails or there's no time left for it
+			List<MediaSearchResult> fullResult = tryFullSearch(query, searchTerm);
+			if (!fullResult.isEmpty()) {
+				result = fullResult;
+			}
+		}
+
+		if (providerInfo.getConfig().getValueAsBool("prefetchSearchResults") && !context.isExpired()) {
+			// scrape the metadata of all results up front, but not one after another
+			long timeout = Math.min(TimeUnit.SECONDS.toMillis(FernsehserienMetadataProvider.getConfigValueAsInt("searchTimeout", 30)),
+					context.remainingMillis());
+			new SearchResultEnricher(ScraperExecutor.site(), timeout).enrich(result);
 		}
 
 		Collections.sort(result);
@@ -111,24 +167,38 @@ public class FernsehserienTvShowParser {
 
 	private List<MediaSearchResult> tryFastSearch(MediaSearchOptions query, String searchTerm) throws Exception {
 		List<MediaSearchResult> result = new ArrayList<>();
-		SearchResult[] searchResults;
+		List<SearchResult> searchResults;
 		String country = query.getCountry().getAlpha2(); // for passing the country to the scrape
 
-		StringBuilder sb = new StringBuilder(getFernsehserienSite().getSite());
+		StringBuilder sb = new StringBuilder(baseUrl);
 		sb.append("fastsearch?suchwort=");
 		sb.append(URLEncoder.encode(searchTerm, "UTF-8"));
 
-		try {
-			URI url = new URI(sb.toString());
-			//url.addHeader("Accept-Language", getAcceptLanguage(language, country));
-
-			String searchResultString = IOUtils.toString(url, (Charset) null);
-			Gson gson = new Gson();
-			searchResults = gson.fromJson(searchResultString, SearchResult[].class);
-
-		} catch (Exception e) {
-			getLogger().debug("tried to fetch search response", e);
-			return result;
+		String url = sb.toString();
+		String acceptLanguage = getAcceptLanguage(query.getLanguage(), query.getCountry());
+		String key = url + "|" + acceptLanguage;
+		searchResults = FAST_SEARCHES.get(key);
+		if (searchResults != null) {
+			ScraperEvents.FETCH.begin().commit(context.getId(), ScraperEvents.FAST_SEARCH, url, HttpURLConnection.HTTP_OK, 0L, true, null);
+		}
+		else {
+			// if the site can't be reached or keeps throttling us the search fails instead of finding nothing
+			try (FernsehserienHttpClient.Response response = FernsehserienHttpClient.getInstance().get(url, acceptLanguage, null, context,
+					FAST_SEARCH_TIMEOUT)) {
+				// only get 40 results; the rest of the response isn't read
+				ScraperEvents.Event event = ScraperEvents.PARSE.begin();
+				long start = System.nanoTime();
+				Reader reader = new InputStreamReader(response.getBody(), fernsehserienSite.getCharset());
+				searchResults = Collections.unmodifiableList(SearchResult.read(reader, 40));
+				METRICS.recordStage(ScraperMetrics.PARSE_FAST_SEARCH, start);
+				event.commit(context.getId(), ScraperEvents.FAST_SEARCH, searchResults.size());
+			}
+			catch (MalformedJsonException | IllegalStateException e) {
+				METRICS.recordError(ScraperMetrics.PARSE_FAST_SEARCH, e);
+				getLogger().warn("could not read the search response for " + searchTerm, e);
+				return result;
+			}
+			FAST_SEARCHES.put(key, searchResults);
 		}
 
 		for (SearchResult singleResult : searchResults) {
@@ -137,21 +207,14 @@ public class FernsehserienTvShowParser {
 			options.setLanguage(query.getLanguage());
 			options.setCountry(CountryCode.valueOf(country));
 
-			MediaSearchResult sr = new MediaSearchResult(FernsehserienMetadataProvider.providerInfo.getId(), MediaType.TV_SHOW);
+			// the full metadata is only scraped when somebody asks for it
+			LazyMediaSearchResult sr = new LazyMediaSearchResult(this, options);
 			sr.setTitle(singleResult.getTitle());
 			sr.setId(singleResult.getSeries());
 			sr.setScore(1);
 			sr.setPosterUrl(singleResult.getBannerUrl());
 			sr.setYear(singleResult.getYear());
-			MediaMetadata metadata = getMetadata(singleResult.getSeries(), options);
-			sr.setOriginalTitle(metadata.getOriginalTitle());
-			sr.setMetadata(metadata);
 			result.add(sr);
-
-			// only get 40 results
-			if (result.size() >= 40) {
-				break;
-			}
 		}
 		return result;
 	}
@@ -159,31 +222,34 @@ public class FernsehserienTvShowParser {
 	private List<MediaSearchResult> tryFullSearch(MediaSearchOptions query, String searchTerm) throws Exception {
 		List<MediaSearchResult> result = new ArrayList<>();
 
-		StringBuilder sb = new StringBuilder(getFernsehserienSite().getSite());
+		StringBuilder sb = new StringBuilder(baseUrl);
 		sb.append("suche/");
 		sb.append(URLEncoder.encode(searchTerm, "UTF-8"));
 
 		try {
-			CachedUrl url = new CachedUrl(sb.toString());
-			url.addHeader("Accept-Language", getAcceptLanguage(query.getLanguage().getLanguage(), query.getCountry().getAlpha2()));
-			Document doc = Jsoup.parse(url.getInputStream(), fernsehserienSite.getCharset().displayName(), "");
-
-			for (Element elem : doc.getElementsByClass("suchergebnis"))
+			FernsehserienHttpClient.Page page = FernsehserienHttpClient.getInstance().getRecentPage(sb.toString(),
+					getAcceptLanguage(query.getLanguage(), query.getCountry()), context);
+			ScraperEvents.Event event = ScraperEvents.PARSE.begin();
+			long start = System.nanoTime();
+			Document doc = Jsoup.parse(page.getBody(), fernsehserienSite.getCharset().displayName(), "");
+			METRICS.recordStage(ScraperMetrics.PARSE_SEARCH_PAGE, start);
+			commitParse(event, ScraperEvents.SEARCH_PAGE, doc);
+
+			for (Element elem : rule(Field.SEARCH_RESULT).all(doc))
 			{
-				String series = elem.getElementsByTag("a").first().
+				String series = rule(Field.SEARCH_LINK).first(elem).
 						attr("href").substring(1); // trim leading /
-				String title = elem.getElementsByClass("suchergebnis-titel").first().text();
-				String banner = elem.getElementsByClass("suchergebnis-bild").first().
-						getElementsByTag("img").first().attr("src");
-				String wannwo = elem.getElementsByClass("suchergebnis-wannwo").first().ownText();
-				String year = extractNumber(wannwo);
+				String title = rule(Field.SEARCH_TITLE).text(elem);
+				Element bannerImage = rule(Field.SEARCH_BANNER).first(elem);
+				String banner = bannerImage == null ? null : bannerImage.attr("src");
+				String year = rule(Field.SEARCH_YEAR).text(elem);
 
 				MediaSearchResult searchResult = new MediaSearchResult(FernsehserienMetadataProvider.providerInfo.getId(), MediaType.TV_SHOW);
 				searchResult.setTitle(title);
 				searchResult.setId(series);
 				searchResult.setScore(1);
 				searchResult.setPosterUrl(banner);
-				searchResult.setYear(Integer.parseInt(year));
+				searchResult.setYear(year == null ? 0 : Integer.parseInt(year));
 				result.add(searchResult);
 
 				// only get 40 results
@@ -193,142 +259,195 @@ public class FernsehserienTvShowParser {
 			}
 
 		} catch (Exception e) {
-			getLogger().debug("tried to fetch search response", e);
+			// we still have the results of the fast search
+			getLogger().warn("the full search for " + searchTerm + " failed: " + e);
 		}
 
 		return result;
 	}
 
-	private String extractNumber(String str)
-	{
-		str = trimStart(str);
-		for (int i = 0; i < str.length(); i++) {
-			if (!Character.isDigit(str.charAt(i)))
-				return str.substring(0, i);
+	private ExtractionRule rule(Field field) {
+		return fernsehserienSite.getRule(field);
+	}
+
+	/*
+	 * record the parse of a page; the elements are only counted if somebody records the event
+	 */
+	private void commitParse(ScraperEvents.Event event, String pageKind, Document doc) {
+		if (event.isEnabled()) {
+			event.commit(context.getId(), pageKind, doc.getAllElements().size());
 		}
-		return str;
 	}
 
-	private String trimStart(String str)
-	{
-		for (int i = 0; i < 10; i++) {
-			if (str.startsWith(Integer.toString(i))) {
-				return str;
-			}
+	/*
+	 * a date like 24.09.2001 in the text, or null
+	 */
+	private Date findDate(String text) {
+		Matcher matcher = rule(Field.DATE).find(text);
+		if (matcher == null) {
+			return null;
 		}
-		return trimStart(str.substring(1));
+		int day = Integer.parseInt(matcher.group(1));
+		int month = Integer.parseInt(matcher.group(2)) - 1;
+		int year = Integer.parseInt(matcher.group(3));
+		Calendar cal = new GregorianCalendar(year, month, day);
+		return cal.getTime();
 	}
 
 	private void addOtherProvider(MediaSearchOptions options, MediaMetadata md) throws Exception {
+		String providerName = md.getId("GenreProvider").toString();
+		if (!StringUtils.isBlank(providerName) && !StringUtils.isBlank(md.getId(providerName).toString())) {
+			// searched before - no need to do it again
+			return;
+		}
+
+		MediaSearchOptions movieOptions = new MediaSearchOptions(MediaType.MOVIE, options.getQuery());
+		movieOptions.setCountry(options.getCountry());
+		movieOptions.setLanguage(options.getLanguage());
+		movieOptions.setYear(md.getYear());
+
+		// the searches in the order their results are preferred; if we already know the provider only its searches are started
+		List<ProviderSearch> searches = new ArrayList<>();
+		addProviderSearch(searches, providerName, "useTheTvDb", "tvdb", null, options);
+		addProviderSearch(searches, providerName, "useTmdb", "tmdb", "tvshow", options);
+		addProviderSearch(searches, providerName, "useTmdb", "tmdb", "movie", movieOptions);
+		addProviderSearch(searches, providerName, "useImdb", "imdb", null, options);
+
+		// we only have to search the providers we don't know the answer of, and only up to the first known match
+		for (Iterator<ProviderSearch> it = searches.iterator(); it.hasNext();) {
+			ProviderSearch search = it.next();
+			search.cached = MATCH_CACHE.get(search.getCacheKey(), search.options.getQuery(), search.options.getYear());
+			if (search.cached != null && search.cached.isNoMatch()) {
+				it.remove();
+			}
+		}
+
+		ScraperExecutor executor = ScraperExecutor.providers();
+		int started = 0;
+		int cancelled = 0;
+		String match = null;
 		try {
-			MediaSearchOptions movieOptions = new MediaSearchOptions(MediaType.MOVIE, options.getQuery());
-			movieOptions.setCountry(options.getCountry());
-			movieOptions.setLanguage(options.getLanguage());
-			movieOptions.setYear(md.getYear());
-
-			Future<List<MediaSearchResult>> futureTheTvDb = getFutureTvShow("useTheTvDb", "tvdb", options);
-			Future<List<MediaSearchResult>> futureTmdb = getFutureTvShow("useTmdb", "tmdb", options);
-			Future<List<MediaSearchResult>> futureTmdbMovie = getFutureMovie("useTmdb", "tmdb", movieOptions);
-			Future<List<MediaSearchResult>> futureImdb = getFutureTvShow("useImdb", "imdb", options);
-
-			String providerName = md.getId("GenreProvider").toString();
-			if (StringUtils.isBlank(providerName)) {
-				if (searchSingleProvider(futureTheTvDb, "tvdb", options, md))
-					return;
-				if (searchSingleProvider(futureTmdb, "tmdb", options, md)) {
-					md.setId("tmdbKind", "tvshow");
-					return;
-				 }
-				if (searchSingleProvider(futureTmdbMovie, "tmdb", movieOptions, md)) {
-					md.setId("tmdbKind", "movie");
-					return;
+			for (ProviderSearch search : searches) {
+				if (search.cached != null) {
+					break;
+				}
+				search.future = "movie".equals(search.tmdbKind) ? getFutureMovie(search.providerName, search.options)
+						: getFutureTvShow(search.providerName, search.options);
+				started++;
+			}
+			for (ProviderSearch search : searches) {
+				MediaSearchResult singleResult;
+				if (search.cached != null) {
+					singleResult = search.cached.getResult();
+				}
+				else {
+					ScraperEvents.Event event = ScraperEvents.PROVIDER_CALL.begin();
+					try {
+						singleResult = searchSingleProvider(search.future, search.providerName, search.options);
+						// the provider answered, so a missing match is a real "no match"
+						MATCH_CACHE.put(search.getCacheKey(), search.options.getQuery(), search.options.getYear(), singleResult);
+						event.commit(context.getId(), search.providerName, search.getCall(), singleResult == null ? "no match" : "match");
+					}
+					catch (Exception e) {
+						// e.g. not installed; nothing is cached, so a provider installed later is asked next time
+						getLogger().debug("Got exception trying to search " + search.providerName + ": " + e);
+						event.commit(context.getId(), search.providerName, search.getCall(), ScraperEvents.getOutcome(e));
+						singleResult = null;
+					}
 				}
-				searchSingleProvider(futureImdb, "imdb", options, md);
-			} else {
-				switch (providerName)
-				{
-					case "tvdb":
-						searchSingleProvider(futureTheTvDb, "tvdb", options, md);
-						return;
-					case "tmdb":
-						if (searchSingleProvider(futureTmdb, "tmdb", options, md))
-							return;
-						searchSingleProvider(futureTmdbMovie, "tmdb", movieOptions, md);
-						return;
-					case "imdb":
-						searchSingleProvider(futureImdb, "imdb", options, md);
-						return;
+				if (singleResult != null) {
+					applyMatch(singleResult, search.providerName, search.options, md);
+					if (search.tmdbKind != null) {
+						md.setId("tmdbKind", search.tmdbKind);
+					}
+					match = search.providerName + (search.cached != null ? " (cached)" : "");
+					break;
 				}
 			}
-		} catch (Exception e) {
+		}
+		catch (Exception e) {
 			getLogger().debug("Got exception: " + e);
 		}
+		finally {
+			// the remaining searches can't change the result anymore; free their threads
+			for (ProviderSearch search : searches) {
+				if (search.future != null && !search.future.isDone() && search.future.cancel(true)) {
+					cancelled++;
+					ScraperEvents.PROVIDER_CALL.begin().commit(context.getId(), search.providerName, search.getCall(), "cancelled");
+				}
+			}
+			getLogger().debug("other providers for '" + options.getQuery() + "': started " + started + ", matched "
+					+ (match == null ? "none" : match) + ", cancelled " + cancelled + "; " + executor + "; " + MATCH_CACHE);
+		}
 	}
 
-	private Future<List<MediaSearchResult>> getFutureTvShow(String key, String providerName, MediaSearchOptions options) {
+	private void addProviderSearch(List<ProviderSearch> searches, String genreProvider, String key, String providerName, String tmdbKind,
+			MediaSearchOptions options) {
+		if (!StringUtils.isBlank(genreProvider) && !genreProvider.equals(providerName)) {
+			return;
+		}
 		if (FernsehserienMetadataProvider.providerInfo.getConfig().getValueAsBool(key)) {
-			ExecutorCompletionService<List<MediaSearchResult>> completionService = new ExecutorCompletionService<>(executor);
-			Callable<List<MediaSearchResult>> worker = new OtherTvShowSearchWorker(providerName, options);
-			return completionService.submit(worker);
+			searches.add(new ProviderSearch(providerName, tmdbKind, options));
 		}
-		return null;
 	}
 
-	private Future<List<MediaSearchResult>> getFutureMovie(String key, String providerName, MediaSearchOptions options) {
-		if (FernsehserienMetadataProvider.providerInfo.getConfig().getValueAsBool(key)) {
-			ExecutorCompletionService<List<MediaSearchResult>> completionService = new ExecutorCompletionService<>(executor);
-			Callable<List<MediaSearchResult>> worker = new OtherMovieSearchWorker(providerName, options);
-			return completionService.submit(worker);
+	private Future<List<MediaSearchResult>> getFutureTvShow(String providerName, MediaSearchOptions options) {
+		Callable<List<MediaSearchResult>> worker = new OtherTvShowSearchWorker(providerName, options);
+		return ScraperExecutor.providers().submit(worker);
+	}
+
+	private Future<List<MediaSearchResult>> getFutureMovie(String providerName, MediaSearchOptions options) {
+		Callable<List<MediaSearchResult>> worker = new OtherMovieSearchWorker(providerName, options);
+		return ScraperExecutor.providers().submit(worker);
+	}
+
+	/*
+	 * wait for the search at the other provider and pick the result that matches the show; null if there is none
+	 */
+	private MediaSearchResult searchSingleProvider(Future<List<MediaSearchResult>> future, String providerName, MediaSearchOptions options)
+			throws Exception {
+		List<MediaSearchResult> results = context.await(future, "the " + providerName + " search");
+		if (results == null || results.size() == 0)
+			return null;
+		if (results.size() == 1) {
+			return results.get(0);
+		}
+		for (MediaSearchResult result : results) {
+			if ((options.getQuery().equalsIgnoreCase(result.getTitle()) ||
+					options.getQuery().equalsIgnoreCase(result.getOriginalTitle())) &&
+					result.getYear() == options.getYear()) {
+				return result;
+			}
 		}
 		return null;
 	}
 
-	private Boolean searchSingleProvider(Future<List<MediaSearchResult>> future, String providerName, MediaSearchOptions options, MediaMetadata md) {
-		if (future != null) {
-			try {
-				if (!StringUtils.isBlank(md.getId("GenreProvider").toString()) &&
-						!StringUtils.isBlank(md.getId(md.getId("GenreProvider").toString()).toString())) {
-					// searched before - no need to do it again
-					return true;
-				}
-				List<MediaSearchResult> results = future.get();
-				MediaSearchResult singleResult = null;
-				if (results == null || results.size() == 0)
-					return false;
-				if (results.size() == 1) {
-					singleResult = results.get(0);
-				}
-				else {
-					for (MediaSearchResult result : results) {
-						if ((options.getQuery().equalsIgnoreCase(result.getTitle()) ||
-								options.getQuery().equalsIgnoreCase(result.getOriginalTitle())) &&
-								result.getYear() == options.getYear()) {
-							singleResult = result;
-							break;
-						}
-					}
-				}
-				if (singleResult != null) {
-					md.setId("GenreProvider", providerName);
-					md.setId(providerName, singleResult.getId());
-					if ("tmdb".equals(providerName)) {
-						options.setTmdbId(Integer.parseInt(singleResult.getId()));
-					}
-					options.setImdbId(singleResult.getIMDBId());
-					if (!StringUtils.isBlank(singleResult.getPosterUrl())) {
-						MediaArtwork media = new MediaArtwork(providerName, MediaArtwork.MediaArtworkType.POSTER);
-						media.setDefaultUrl(singleResult.getPosterUrl());
-						md.addMediaArt(media);
-					}
-					md.setId("GenreProviderResult", singleResult);
-					return true;
-				}
-			}
-			catch (Exception ignored) {
-				getLogger().debug("Got exception trying to search " + providerName + ": " + ignored);
-			}
+	private void applyMatch(MediaSearchResult singleResult, String providerName, MediaSearchOptions options, MediaMetadata md) {
+		md.setId("GenreProvider", providerName);
+		md.setId(providerName, singleResult.getId());
+		if ("tmdb".equals(providerName)) {
+			options.setTmdbId(Integer.parseInt(singleResult.getId()));
 		}
-		return false;
+		options.setImdbId(singleResult.getIMDBId());
+		if (!StringUtils.isBlank(singleResult.getPosterUrl())) {
+			MediaArtwork media = new MediaArtwork(providerName, MediaArtwork.MediaArtworkType.POSTER);
+			media.setDefaultUrl(singleResult.getPosterUrl());
+			md.addMediaArt(media);
+		}
+		md.setId("GenreProviderResult", singleResult);
+	}
+
+	/*
+	 * the accept-language http header for fernsehserien; it's only built once per language and country
+	 */
+	static String getAcceptLanguage(Locale language, CountryCode country) {
+		String key = language.getLanguage() + "_" + country.getAlpha2();
+		String header = ACCEPT_LANGUAGES.get(key);
+		if (header == null) {
+			header = getAcceptLanguage(language.getLanguage(), country.getAlpha2());
+			ACCEPT_LANGUAGES.putIfAbsent(key, header);
+		}
+		return header;
 	}
 
 	/*
@@ -440,21 +559,66 @@ public class FernsehserienTvShowParser {
 
 		LOGGER.debug("FERNSEHSERIEN: getTvShowMetadata(fernsehserienId): " + fernsehserienId);
 
-		// get combined data
-		CachedUrl url = new CachedUrl(fernsehserienSite.getSite() + fernsehserienId);
-		url.addHeader("Accept-Language", getAcceptLanguage(options.getLanguage().getLanguage(), options.getCountry().getAlpha2()));
-		Document doc = Jsoup.parse(url.getInputStream(), fernsehserienSite.getCharset().displayName(), "");
+		String storeKey = "show:" + fernsehserienId;
+		MetadataStore store = getStore();
+		StoredMetadata stored = store == null ? null : store.get(storeKey, StoredMetadata.class, SHOW_MAX_AGE);
+		if (stored != null) {
+			return useStoredShow(stored, options);
+		}
 
+		// get combined data; if we parsed the page before only if it changed since then
+		StoredMetadata previous = store == null ? null : store.get(storeKey, StoredMetadata.class);
+		FernsehserienHttpClient client = FernsehserienHttpClient.getInstance();
+		FernsehserienHttpClient.Page page = client.getPage(baseUrl + fernsehserienId,
+				getAcceptLanguage(options.getLanguage(), options.getCountry()), getValidators(previous), context);
+		if (page.isNotModified()) {
+			client.recordReuse(previous.validators);
+			store.put(storeKey, previous);
+			return useStoredShow(previous, options);
+		}
+		// only the header and the infos are read, no need to build the DOM of the rest of the page
+		ScraperEvents.Event event = ScraperEvents.PARSE.begin();
+		long start = System.nanoTime();
+		Document doc = fernsehserienSite.getShowPageParser().parse(page.getBytes(), fernsehserienSite.getCharset());
+		METRICS.recordStage(ScraperMetrics.PARSE_SHOW_PAGE, start);
+		commitParse(event, ScraperEvents.SHOW_PAGE, doc);
+		start = System.nanoTime();
 		parseInfoPage(doc, options, md);
+		METRICS.recordStage(ScraperMetrics.PARSE_INFO_PAGE, start);
 
 		// populate id
 		md.setId(FernsehserienMetadataProvider.providerInfo.getId(), fernsehserienId);
 
+		if (context.isExpired()) {
+			// better a show without the ids and genres of the other providers than none at all
+			LOGGER.debug("FERNSEHSERIEN: no time left to ask the other providers about " + fernsehserienId);
+			return md;
+		}
+		start = System.nanoTime();
 		addGenres(md, options);
+		METRICS.recordStage(ScraperMetrics.GENRES, start);
+
+		if (store != null) {
+			StoredMetadata show = StoredMetadata.from(md);
+			show.validators = page.getValidators();
+			store.put(storeKey, show);
+		}
+		return md;
+	}
 
+	private MediaMetadata useStoredShow(StoredMetadata stored, MediaScrapeOptions options) {
+		MediaMetadata md = stored.toMediaMetadata(providerInfo.getId());
+		for (Map.Entry<String, Object> kv : md.getIds().entrySet()) {
+			options.setId(kv.getKey(), kv.getValue().toString());
+		}
+		options.setMetadata(md);
 		return md;
 	}
 
+	private static PageValidators getValidators(StoredMetadata previous) {
+		return previous != null && previous.validators != null && previous.validators.isPresent() ? previous.validators : null;
+	}
+
 	private void addGenres(MediaMetadata metadata, MediaScrapeOptions options) {
 		try {
 			MediaSearchOptions searchOptions = new MediaSearchOptions(MediaType.TV_SHOW);
@@ -463,7 +627,9 @@ public class FernsehserienTvShowParser {
 			searchOptions.setLanguage(options.getLanguage());
 			searchOptions.setYear(metadata.getYear());
 
+			long start = System.nanoTime();
 			addOtherProvider(searchOptions, metadata);
+			METRICS.recordStage(ScraperMetrics.OTHER_PROVIDERS, start);
 			options.setImdbId(searchOptions.getImdbId());
 			options.setTmdbId(searchOptions.getTmdbId());
 			for (Map.Entry<String, Object> kv : metadata.getIds().entrySet()) {
@@ -474,6 +640,11 @@ public class FernsehserienTvShowParser {
 			getLogger().debug("Got exception adding other provider: " + e);
 		}
 
+		if (!metadata.getGenres().isEmpty() && rule(Field.SHOW_GENRE).isVerified()) {
+			// the genres of the show page are enough; ask the other provider only for shows without any. As long as the rule hasn't been
+			// checked on the real site the other provider is asked anyway, so that a rule that picks the wrong elements doesn't go unnoticed
+			return;
+		}
 		String providerName = metadata.getId("GenreProvider").toString();
 		if (StringUtils.isBlank(providerName))
 			return;
@@ -486,7 +657,6 @@ public class FernsehserienTvShowParser {
 
 		Callable<MediaMetadata> worker = null;
 		Boolean isMovie = "movie".equals(metadata.getId("tmdbKind"));
-		ExecutorCompletionService<MediaMetadata> completionService = new ExecutorCompletionService<>(executor);
 		MediaScrapeOptions newOptions = new MediaScrapeOptions(isMovie ? MediaType.MOVIE : MediaType.TV_SHOW);
 		newOptions.setMetadata(metadata);
 		newOptions.setImdbId(options.getImdbId());
@@ -501,18 +671,21 @@ public class FernsehserienTvShowParser {
 		} else {
 			worker = new OtherTvShowMediaMetaDataWorker(providerName, newOptions);
 		}
-		Future<MediaMetadata> future = completionService.submit(worker);
+		Future<MediaMetadata> future = ScraperExecutor.providers().submit(worker);
 
+		ScraperEvents.Event event = ScraperEvents.PROVIDER_CALL.begin();
 		try {
-			MediaMetadata otherMetadata = future.get();
+			MediaMetadata otherMetadata = context.await(future, "the " + providerName + " metadata");
 			if (otherMetadata != null) {
 				for (MediaGenres genre : otherMetadata.getGenres()) {
 					metadata.addGenre(genre);
 				}
 			}
+			event.commit(context.getId(), providerName, "metadata", otherMetadata == null ? "no metadata" : "genres");
 		}
 		catch (Exception e) {
 			getLogger().debug("Got exception trying to get metadata from " + providerName + ": " + e);
+			event.commit(context.getId(), providerName, "metadata", ScraperEvents.getOutcome(e));
 		}
 	}
 
@@ -563,59 +736,43 @@ public class FernsehserienTvShowParser {
 				</div>
 			</article>
 		 */
-		Element element = doc.getElementsByClass("serie-header").first()
-			.getElementsByClass("infos").first().getElementsByTag("h1").first();
-		if (element != null) {
-			md.setTitle(cleanString(element.text()));
+		String title = rule(Field.SHOW_TITLE).text(doc);
+		if (title != null) {
+			md.setTitle(cleanString(title));
 		}
-		element = doc.getElementsByClass("serie-produktionsjahre").first();
+		Element element = rule(Field.SHOW_PRODUCTION).first(doc);
 		if (element != null) {
-			Elements countries = element.getElementsByTag("abbr");
-			for (Element country: countries) {
+			for (Element country : rule(Field.SHOW_COUNTRY).all(element)) {
 				md.addCountry(country.text());
 				country.remove();
 			}
-			String text = element.text().replace("\n", "").replaceFirst("^(\\s|\u00A0)*(/(\\s|\u00A0)*)?", "");
-			String[] parts = text.split(" ");
-			if (parts != null && parts.length > 0) {
-				String[] years = parts[0].split("–");
-				if (years.length > 0) {
-					md.setYear(Integer.parseInt(years[0]));
-					if (years.length > 1 && Integer.parseInt(years[1]) <= Calendar.getInstance().get(Calendar.YEAR)) {
-						md.setStatus("Ended");
-					}
-				} else {
-					md.setYear(Integer.parseInt(parts[0]));
-				}
-				if (parts.length > 1) {
-					// set original title
-					Pattern titlePattern = Pattern.compile("\\(([^)]+)\\)");
-					Matcher matcher = titlePattern.matcher(element.text());
-					if (matcher.find()) {
-						md.setOriginalTitle(matcher.group(1));
-					}
+			String text = element.text();
+			Matcher years = rule(Field.SHOW_YEARS).find(text);
+			if (years != null) {
+				md.setYear(Integer.parseInt(years.group(1)));
+				if (years.group(2) != null && Integer.parseInt(years.group(2)) <= Calendar.getInstance().get(Calendar.YEAR)) {
+					md.setStatus("Ended");
 				}
 			}
-		}
-		element = doc.getElementsByClass("serie-infos-erstausstrahlung").first();
-		if (element != null) {
-			String content = element.text();
-
-			// search year
-			Pattern yearPattern = Pattern.compile("([0-9]{2}).([0-9]{2}).([0-9]{4})");
-			Matcher matcher = yearPattern.matcher(content);
-			if (matcher.find()) {
-				int day = Integer.parseInt(matcher.group(1));
-				int month = Integer.parseInt(matcher.group(2)) - 1;
-				int year = Integer.parseInt(matcher.group(3));
-				Calendar cal = new GregorianCalendar(year, month, day);
-				Date date = cal.getTime();
-				md.setReleaseDate(date);
+			// set original title
+			String originalTitle = rule(Field.SHOW_ORIGINAL_TITLE).group(text);
+			if (originalTitle != null) {
+				md.setOriginalTitle(originalTitle);
 			}
 		}
-		element = doc.getElementById("serie-info");
-		if (element != null) {
-			md.setPlot(element.text());
+		Date firstAired = findDate(rule(Field.SHOW_FIRST_AIRED).text(doc));
+		if (firstAired != null) {
+			md.setReleaseDate(firstAired);
+		}
+		String plot = rule(Field.SHOW_PLOT).text(doc);
+		if (plot != null) {
+			md.setPlot(plot);
+		}
+		for (Element genre : rule(Field.SHOW_GENRE).all(doc)) {
+			MediaGenres tmmGenre = GenreMapper.getGenre(genre.text());
+			if (tmmGenre != null) {
+				md.addGenre(tmmGenre);
+			}
 		}
 		return md;
 	}
@@ -657,102 +814,196 @@ public class FernsehserienTvShowParser {
 		md.setSeasonNumber(seasonNr);
 		md.setEpisodeNumber(episodeNr);
 
+		MediaMetadata stored = getStoredEpisode(fernsehserienId, seasonNr, episodeNr);
+		if (stored != null) {
+			return stored;
+		}
+
 		LOGGER.debug("FERNSEHSERIEN: getEpisodeMetadata(): Looking for season " + seasonNr + ", episodeNr " + episodeNr);
-		MediaEpisode wantedEpisode = findEpisode(options, seasonNr, episodeNr);
+		MediaEpisode wantedEpisode = findEpisode(fernsehserienId, options, seasonNr, episodeNr);
 
 		// we did not find the episode; return
 		if (wantedEpisode == null) {
 			return md;
 		}
 
-		// then parse the actors page to get the rest
-		CachedUrl url = new CachedUrl(fernsehserienSite.getSite() + "/" + wantedEpisode.ids.get(providerInfo.getId()));
-		url.addHeader("Accept-Language", getAcceptLanguage(options.getLanguage().getLanguage(), options.getCountry().getAlpha2()));
-		Document doc = Jsoup.parse(url.getInputStream(), fernsehserienSite.getCharset().displayName(), "");
+		return parseEpisodePage(fernsehserienId, wantedEpisode, options, md);
+	}
 
-		md.setTitle(wantedEpisode.title);
-		Pattern yearPattern = Pattern.compile("([0-9]{2}).([0-9]{2}).([0-9]{4})");
-		Matcher matcher = yearPattern.matcher(wantedEpisode.firstAired);
-		if (matcher.find()) {
-			int day = Integer.parseInt(matcher.group(1));
-			int month = Integer.parseInt(matcher.group(2)) - 1;
-			int year = Integer.parseInt(matcher.group(3));
-			Calendar cal = new GregorianCalendar(year, month, day);
-			Date date = cal.getTime();
-			md.setReleaseDate(date);
+	/**
+	 * get the metadata of several episodes of a series. The episode guide is read only once and the episode pages are loaded
+	 * concurrently.
+	 *
+	 * @param fernsehserienId the id of the series
+	 * @param episodes the wanted episodes
+	 * @param options the scrape options
+	 * @return the metadata of all found episodes, ordered by season and episode
+	 * @throws Exception
+	 */
+	Map<EpisodeNumber, MediaMetadata> getEpisodesMetadata(String fernsehserienId, Set<EpisodeNumber> episodes, final MediaScrapeOptions options)
+			throws Exception {
+		Map<EpisodeNumber, MediaMetadata> result = new TreeMap<>();
+		if (StringUtils.isBlank(fernsehserienId) || episodes.isEmpty()) {
+			return result;
 		}
-		md.setId(providerInfo.getId(), wantedEpisode.ids.get(providerInfo.getId()));
-		Pattern titlePattern = Pattern.compile("\\(([^)]+)\\)");
-		Element content = doc.getElementsByClass("episode-output-originaltitel").first();
-		if (content != null) {
-			matcher = titlePattern.matcher(content.text());
-			if (matcher.find()) {
-				md.setOriginalTitle(matcher.group(1));
+
+		// episodes we have in the local store don't need the guide or their page
+		Set<EpisodeNumber> missing = new TreeSet<>();
+		for (EpisodeNumber number : episodes) {
+			MediaMetadata stored = getStoredEpisode(fernsehserienId, number.getSeason(), number.getEpisode());
+			if (stored != null) {
+				result.put(number, stored);
+			}
+			else {
+				missing.add(number);
+			}
+		}
+		if (missing.isEmpty()) {
+			return result;
+		}
+
+		final String seriesId = fernsehserienId;
+		EpisodeGuide guide = getEpisodeGuide(fernsehserienId, options);
+		Map<EpisodeNumber, Future<MediaMetadata>> futures = new TreeMap<>();
+		ScraperExecutor executor = ScraperExecutor.site();
+		try {
+			for (EpisodeNumber number : missing) {
+				final MediaEpisode wantedEpisode = guide.getEpisode(number.getSeason(), number.getEpisode());
+				if (wantedEpisode == null) {
+					LOGGER.debug("FERNSEHSERIEN: " + number + " of " + fernsehserienId + " is not in the episode guide");
+					continue;
+				}
+				final MediaMetadata md = new MediaMetadata(providerInfo.getId());
+				md.setSeasonNumber(number.getSeason());
+				md.setEpisodeNumber(number.getEpisode());
+				futures.put(number, executor.submit(new Callable<MediaMetadata>() {
+					@Override
+					public MediaMetadata call() throws Exception {
+						return parseEpisodePage(seriesId, wantedEpisode, options, md);
+					}
+				}));
+			}
+
+			for (Map.Entry<EpisodeNumber, Future<MediaMetadata>> entry : futures.entrySet()) {
+				try {
+					result.put(entry.getKey(), context.await(entry.getValue(), entry.getKey() + " of " + fernsehserienId));
+				}
+				catch (ExecutionException e) {
+					LOGGER.warn("could not scrape " + entry.getKey() + " of " + fernsehserienId + ": " + e.getCause());
+				}
+				catch (TimeoutException e) {
+					// return the episodes we have so far
+					LOGGER.warn(e.getMessage());
+				}
 			}
 		}
-		content = doc.getElementsByClass("episode-output-instaffel").first();
-		if (content != null) {
-			matcher = titlePattern.matcher(content.text());
-			if (matcher.find()) {
-				String[] parts = matcher.group(1).split(" ");
-				md.setRuntime(Integer.parseInt(parts[0]));
+		finally {
+			// don't leave episodes in the queue nobody waits for anymore
+			for (Future<MediaMetadata> future : futures.values()) {
+				future.cancel(true);
 			}
 		}
+		LOGGER.debug(executor.toString());
+		return result;
+	}
+
+	/*
+	 * parse the page of an episode (the actors page) to get the rest of the metadata
+	 */
+	private MediaMetadata parseEpisodePage(String fernsehserienId, MediaEpisode wantedEpisode, MediaScrapeOptions options, MediaMetadata md)
+			throws Exception {
+		String storeKey = "episode:" + fernsehserienId + ":" + md.getSeasonNumber() + ":" + md.getEpisodeNumber();
+		MetadataStore store = getStore();
+		StoredMetadata previous = store == null ? null : store.get(storeKey, StoredMetadata.class);
+		FernsehserienHttpClient client = FernsehserienHttpClient.getInstance();
+		FernsehserienHttpClient.Page page = client.getPage(baseUrl + "/" + wantedEpisode.ids.get(providerInfo.getId()),
+				getAcceptLanguage(options.getLanguage(), options.getCountry()), getValidators(previous), context);
+		if (page.isNotModified()) {
+			client.recordReuse(previous.validators);
+			store.put(storeKey, previous);
+			return previous.toMediaMetadata(providerInfo.getId());
+		}
+		ScraperEvents.Event event = ScraperEvents.PARSE.begin();
+		long start = System.nanoTime();
+		Document doc = Jsoup.parse(page.getBody(), fernsehserienSite.getCharset().displayName(), "");
+		METRICS.recordStage(ScraperMetrics.PARSE_EPISODE_PAGE, start);
+		commitParse(event, ScraperEvents.EPISODE_PAGE, doc);
+		start = System.nanoTime();
+		parseEpisodePage(doc, wantedEpisode, md);
+		METRICS.recordStage(ScraperMetrics.EXTRACT_EPISODE, start);
+		if (store != null) {
+			StoredMetadata episode = StoredMetadata.from(md);
+			episode.validators = page.getValidators();
+			store.put(storeKey, episode);
+		}
+		return md;
+	}
+
+	void parseEpisodePage(Document doc, MediaEpisode wantedEpisode, MediaMetadata md) {
+		md.setTitle(wantedEpisode.title);
+		Date firstAired = findDate(wantedEpisode.firstAired);
+		if (firstAired != null) {
+			md.setReleaseDate(firstAired);
+		}
+		md.setId(providerInfo.getId(), wantedEpisode.ids.get(providerInfo.getId()));
+		String originalTitle = rule(Field.EPISODE_ORIGINAL_TITLE).text(doc);
+		if (originalTitle != null) {
+			md.setOriginalTitle(originalTitle);
+		}
+		String runtime = rule(Field.EPISODE_RUNTIME).text(doc);
+		if (runtime != null) {
+			md.setRuntime(Integer.parseInt(runtime));
+		}
 
-		Elements contentParas = doc.getElementsByClass("episode-output-inhalt").first().getElementsByTag("p");
-		if (contentParas != null) {
-			String plot = "";
+		Elements contentParas = rule(Field.EPISODE_PLOT).all(doc);
+		if (!contentParas.isEmpty()) {
+			StringBuilder plot = new StringBuilder();
 			for (Element element : contentParas) {
-				plot += element.text() + "\n";
+				plot.append(element.text()).append('\n');
 			}
-			md.setPlot(plot);
+			md.setPlot(plot.toString());
 		}
-		content = doc.getElementsByClass("episodenguide-episode-img-div").first();
-		if (content != null) {
-			Element img = content.getElementsByTag("img").first();
+		Element img = rule(Field.EPISODE_THUMB).first(doc);
+		if (img != null) {
 			MediaArtwork artwork = new MediaArtwork(providerInfo.getId(), MediaArtwork.MediaArtworkType.THUMB);
 			artwork.setDefaultUrl(img.attributes().get("src"));
 			md.addMediaArt(artwork);
 		}
-		Elements castCrewTables = doc.getElementsByClass("cast-crew");
-		for (Element element: castCrewTables) {
+		for (Element element : rule(Field.CAST_TABLE).all(doc)) {
 			String what = element.previousElementSibling().text();
-			MediaCastMember.CastType whatType = what.equals("Cast") ? MediaCastMember.CastType.ACTOR : MediaCastMember.CastType.OTHER;
-			Elements rows = element.getElementsByClass("ep-hover");
-			for (Element row: rows) {
+			boolean crew = what.equals(fernsehserienSite.getCrewHeading());
+			MediaCastMember.CastType whatType = what.equals(fernsehserienSite.getCastHeading()) ? MediaCastMember.CastType.ACTOR
+					: MediaCastMember.CastType.OTHER;
+			for (Element row : rule(Field.CAST_ROW).all(element)) {
 				MediaCastMember member = new MediaCastMember();
 				member.setType(whatType);
 				member.setId(row.attributes().get("href"));
-				member.setName(row.getElementsByClass("schauspieler").first().text());
-				if (what.equals("Crew")) {
-					for (Element bemerkung : row.getElementsByClass("bemerkung")) {
-						switch (bemerkung.text()) {
-							case "Produktion":
-								member.setType(MediaCastMember.CastType.PRODUCER);
-								break;
-							case "Regie":
-								member.setType(MediaCastMember.CastType.DIRECTOR);
-								break;
-							case "Drehbuch":
-								member.setType(MediaCastMember.CastType.WRITER);
-								break;
+				member.setName(rule(Field.CAST_NAME).text(row));
+				if (crew) {
+					for (Element bemerkung : rule(Field.CAST_REMARK).all(row)) {
+						String remark = bemerkung.text();
+						if (remark.equals(fernsehserienSite.getProducerLabel())) {
+							member.setType(MediaCastMember.CastType.PRODUCER);
 						}
-						member.setCharacter(bemerkung.text());
+						else if (remark.equals(fernsehserienSite.getDirectorLabel())) {
+							member.setType(MediaCastMember.CastType.DIRECTOR);
+						}
+						else if (remark.equals(fernsehserienSite.getWriterLabel())) {
+							member.setType(MediaCastMember.CastType.WRITER);
+						}
+						member.setCharacter(remark);
 					}
 				}
 				else {
-					member.setCharacter(row.getElementsByClass("rolle").first().text());
+					member.setCharacter(rule(Field.CAST_ROLE).text(row));
 				}
-				Element imageElement = row.getElementsByClass("bild").first();
-				Elements images = imageElement.getElementsByTag("img");
-				if (images.size() > 0) {
-					member.setImageUrl(images.first().attributes().get("src"));
+				Element image = rule(Field.CAST_IMAGE).first(row);
+				if (image != null) {
+					member.setImageUrl(image.attributes().get("src"));
 				}
 				md.addCastMember(member);
 			}
 		}
-
-		return md;
 	}
 
 	/**
@@ -765,45 +1016,28 @@ public class FernsehserienTvShowParser {
 	 * @throws Exception
 	 */
 	MediaEpisode findEpisode(MediaScrapeOptions options, int seasonNr, int episodeNr) throws Exception {
-		// parse the episodes from the ratings overview page (e.g.
-		// https://www.fernsehserien.de/malcolm-mittendrin/episodenguide )
-		String fernsehserienId = options.getId("fernsehserien");
+		return findEpisode(options.getId("fernsehserien"), options, seasonNr, episodeNr);
+	}
+
+	private MediaEpisode findEpisode(String fernsehserienId, MediaScrapeOptions options, int seasonNr, int episodeNr) throws Exception {
 		if (StringUtils.isBlank(fernsehserienId)) {
 			return null;
 		}
 
-		CachedUrl url = new CachedUrl(fernsehserienSite.getSite() + fernsehserienId + "/episodenguide");
-		url.addHeader("Accept-Language", getAcceptLanguage(options.getLanguage().getLanguage(), options.getCountry().getAlpha2()));
-		Document doc = Jsoup.parse(url.getInputStream(), fernsehserienSite.getCharset().displayName(), "");
-
-		Elements episodeElements = doc.getElementsByAttributeValue("itemprop", "episode");
-		for (Element episode : episodeElements) {
-			// 	1		1.	01		Malcolm, der Held	24.09.2001	Pilot	09.01.2000
-			Elements numbers = episode.getElementsByClass("episodenliste-episodennummer");
-			MediaEpisode me = new MediaEpisode(providerInfo.getId());
-			me.ids.put(providerInfo.getId(), numbers.get(0).attributes().get("data-href"));
-			String seasonStr = numbers.get(1).text();
-			if (StringUtils.isBlank(seasonStr)) {
-				// Specials
-				me.season = 0;
-				if (StringUtils.isBlank(numbers.get(0).text()))
-					me.episode = 0;
-				else
-					me.episode = Integer.parseInt(numbers.get(0).text());
-			} else {
-				me.season = Integer.parseInt(seasonStr.substring(0, seasonStr.length() - 1)); // remove .
-				me.episode = Integer.parseInt(numbers.get(2).text());
-			}
-			Element title = episode.getElementsByClass("episodenliste-titel").first();
-			me.title = title.getElementsByAttributeValue("itemprop", "name").text();
-			me.firstAired = episode.getElementsByClass("episodenliste-ea").first().text();
-
-			if (me.season == seasonNr && me.episode == episodeNr) {
-				return me;
+		EpisodeGuide guide = getCachedGuide(fernsehserienId);
+		if (guide != null) {
+			MediaEpisode episode = guide.getEpisode(seasonNr, episodeNr);
+			if (episode != null || guide.isComplete()) {
+				return episode;
 			}
 		}
 
-		return null;
+		// only read the guide up to the wanted episode. If we already read a part of the guide read at least twice as much this time, so
+		// that scraping a whole season doesn't read the beginning of the guide over and over again
+		int minRows = guide == null ? 0 : guide.size() * 2;
+		guide = readEpisodeGuide(fernsehserienId, options, seasonNr, episodeNr, minRows);
+		cacheGuide(fernsehserienId, guide);
+		return guide.getEpisode(seasonNr, episodeNr);
 	}
 
 	/**
@@ -814,44 +1048,169 @@ public class FernsehserienTvShowParser {
 	 * @throws Exception
 	 */
 	List<MediaEpisode> getEpisodeList(MediaScrapeOptions options) throws Exception {
-		List<MediaEpisode> episodes = new ArrayList<>();
+		EpisodeGuide guide = getEpisodeGuide(options);
+		if (guide == null) {
+			return new ArrayList<>();
+		}
+		return guide.getEpisodes();
+	}
+
+	/**
+	 * get the complete parsed episode guide of the series; it is only downloaded and parsed again when it is no longer in the cache
+	 *
+	 * @param options the scrape options
+	 * @return the guide or null if there is no series id
+	 * @throws Exception
+	 */
+	EpisodeGuide getEpisodeGuide(MediaScrapeOptions options) throws Exception {
+		return getEpisodeGuide(options.getId("fernsehserien"), options);
+	}
 
-		// parse the episodes from the ratings overview page (e.g.
-		// https://www.fernsehserien.de/malcolm-mittendrin/episodenguide )
-		String fernsehserienId = options.getId("fernsehserien");
+	private EpisodeGuide getEpisodeGuide(String fernsehserienId, MediaScrapeOptions options) throws Exception {
 		if (StringUtils.isBlank(fernsehserienId)) {
-			return episodes;
-		}
-
-		CachedUrl url = new CachedUrl(fernsehserienSite.getSite() + "/" + fernsehserienId + "/episodenguide");
-		url.addHeader("Accept-Language", getAcceptLanguage(options.getLanguage().getLanguage(), options.getCountry().getAlpha2()));
-		Document doc = Jsoup.parse(url.getInputStream(), fernsehserienSite.getCharset().displayName(), "");
-
-		Elements episodeElements = doc.getElementsByAttributeValue("itemprop", "episode");
-		for (Element episode : episodeElements) {
-			// 	1		1.	01		Malcolm, der Held	24.09.2001	Pilot	09.01.2000
-			Elements numbers = episode.getElementsByClass("episodenliste-episodennummer");
-			MediaEpisode me = new MediaEpisode(providerInfo.getId());
-			me.ids.put(providerInfo.getId(), numbers.get(0).attributes().get("data-href"));
-			String seasonStr = numbers.get(1).text();
-			if (StringUtils.isBlank(seasonStr)) {
-				// Specials
-				me.season = 0;
-				if (StringUtils.isBlank(numbers.get(0).text()))
-					me.episode = 0;
-				else
-					me.episode = Integer.parseInt(numbers.get(0).text());
-			} else {
-				me.season = Integer.parseInt(seasonStr.substring(0, seasonStr.length() - 1)); // remove .
-				me.episode = Integer.parseInt(numbers.get(2).text());
-			}
-			Element title = episode.getElementsByClass("episodenliste-titel").first();
-			me.title = title.getElementsByAttributeValue("itemprop", "name").text();
-			me.firstAired = episode.getElementsByClass("episodenliste-ea").first().text();
-
-			episodes.add(me);
-		}
-
-		return episodes;
+			return null;
+		}
+
+		EpisodeGuide guide = getCachedGuide(fernsehserienId);
+		if (guide != null && guide.isComplete()) {
+			return guide;
+		}
+
+		guide = readEpisodeGuide(fernsehserienId, options, -1, -1, Integer.MAX_VALUE);
+		cacheGuide(fernsehserienId, guide);
+		return guide;
+	}
+
+	/*
+	 * the guide from the memory cache or - after a restart - from the local store
+	 */
+	private EpisodeGuide getCachedGuide(String fernsehserienId) {
+		EpisodeGuide guide = GUIDE_CACHE.get(fernsehserienId);
+		MetadataStore store = getStore();
+		if (guide == null && store != null) {
+			StoredEpisodeGuide stored = store.get("guide:" + fernsehserienId, StoredEpisodeGuide.class, GUIDE_MAX_AGE);
+			if (stored != null) {
+				guide = stored.toEpisodeGuide();
+				GUIDE_CACHE.put(fernsehserienId, guide);
+			}
+		}
+		return guide;
+	}
+
+	private void cacheGuide(String fernsehserienId, EpisodeGuide guide) {
+		GUIDE_CACHE.put(fernsehserienId, guide);
+	}
+
+	private MediaMetadata getStoredEpisode(String fernsehserienId, int seasonNr, int episodeNr) {
+		MetadataStore store = getStore();
+		if (store == null) {
+			return null;
+		}
+		StoredMetadata stored = store.get("episode:" + fernsehserienId + ":" + seasonNr + ":" + episodeNr, StoredMetadata.class, EPISODE_MAX_AGE);
+		return stored == null ? null : stored.toMediaMetadata(providerInfo.getId());
+	}
+
+	private static MetadataStore getStore() {
+		return providerInfo.getConfig().getValueAsBool("useLocalStore") ? MetadataStore.getDefault() : null;
+	}
+
+	/*
+	 * read the episode guide. If the guide of the show is being read already (e.g. for another episode of the same season) we wait for
+	 * that. If it stopped before the wanted episode the whole guide is read, again in a flight: when a season is scraped in parallel all
+	 * the others wait for the one that only wanted the first episode, and they should share a single second request.
+	 */
+	private EpisodeGuide readEpisodeGuide(final String fernsehserienId, final MediaScrapeOptions options, final int seasonNr,
+			final int episodeNr, final int minRows) throws Exception {
+		String key = fernsehserienId + "|" + getAcceptLanguage(options.getLanguage(), options.getCountry());
+		EpisodeGuide guide = GUIDE_FLIGHTS.execute(key, new Callable<EpisodeGuide>() {
+			@Override
+			public EpisodeGuide call() throws Exception {
+				return downloadEpisodeGuide(fernsehserienId, options, seasonNr, episodeNr, minRows);
+			}
+		}, context);
+		if (guide.isComplete() || (seasonNr >= 0 && guide.getEpisode(seasonNr, episodeNr) != null)) {
+			return guide;
+		}
+		// a key of its own, so that this doesn't wait for somebody who reads just the beginning again
+		return GUIDE_FLIGHTS.execute(key + "|all", new Callable<EpisodeGuide>() {
+			@Override
+			public EpisodeGuide call() throws Exception {
+				// another one that waited may have read the whole guide already
+				EpisodeGuide cached = getCachedGuide(fernsehserienId);
+				if (cached != null && cached.isComplete()) {
+					return cached;
+				}
+				return downloadEpisodeGuide(fernsehserienId, options, -1, -1, Integer.MAX_VALUE);
+			}
+		}, context);
+	}
+
+	/*
+	 * stream the episode guide (e.g. https://www.fernsehserien.de/malcolm-mittendrin/episodenguide ). The response is not cached as
+	 * bytes - the parsed guide is - so that we can stop downloading as soon as we have seen the wanted episode. If the local store has an
+	 * outdated complete guide it is reused as long as the site says the page didn't change.
+	 */
+	private EpisodeGuide downloadEpisodeGuide(String fernsehserienId, MediaScrapeOptions options, int seasonNr, int episodeNr, int minRows)
+			throws Exception {
+		String storeKey = "guide:" + fernsehserienId;
+		MetadataStore store = getStore();
+		StoredEpisodeGuide previous = store == null ? null : store.get(storeKey, StoredEpisodeGuide.class);
+		PageValidators validators = previous != null && previous.validators != null && previous.validators.isPresent() ? previous.validators
+				: null;
+
+		EpisodeGuide.Builder builder = new EpisodeGuide.Builder();
+		EpisodeGuide guide;
+		FernsehserienHttpClient client = FernsehserienHttpClient.getInstance();
+		try (FernsehserienHttpClient.Response response = client.get(baseUrl + fernsehserienId + "/episodenguide",
+				getAcceptLanguage(options.getLanguage(), options.getCountry()), validators, context)) {
+			if (response.isNotModified()) {
+				client.recordReuse(previous.validators);
+				store.put(storeKey, previous);
+				LOGGER.debug("FERNSEHSERIEN: episode guide of " + fernsehserienId + " didn't change; " + client);
+				return previous.toEpisodeGuide();
+			}
+			// the guide is parsed while it is downloaded
+			ScraperEvents.Event event = ScraperEvents.PARSE.begin();
+			long start = System.nanoTime();
+			Reader reader = new InputStreamReader(response.getBody(), fernsehserienSite.getCharset());
+			guide = builder.build(new EpisodeGuideStreamParser(reader).parse(builder, seasonNr, episodeNr, minRows));
+			METRICS.recordStage(ScraperMetrics.PARSE_EPISODE_GUIDE, start);
+			event.commit(context.getId(), ScraperEvents.EPISODE_GUIDE, guide.size());
+			if (guide.isComplete() && store != null) {
+				store.put(storeKey, StoredEpisodeGuide.from(guide, response.getValidators()));
+			}
+		}
+
+		LOGGER.debug("FERNSEHSERIEN: parsed " + (guide.isComplete() ? "episode guide" : "beginning of episode guide") + " of " + fernsehserienId + " ("
+				+ guide.size() + " episodes); " + GUIDE_CACHE + ", " + GUIDE_FLIGHTS);
+		return guide;
+	}
+
+	/**
+	 * One search at another provider started to find the genres of a show
+	 */
+	private static class ProviderSearch {
+		final String providerName;
+		final String tmdbKind;
+		final MediaSearchOptions options;
+		ProviderMatchCache.Match cached;
+		Future<List<MediaSearchResult>> future;
+
+		ProviderSearch(String providerName, String tmdbKind, MediaSearchOptions options) {
+			this.providerName = providerName;
+			this.tmdbKind = tmdbKind;
+			this.options = options;
+		}
+
+		String getCacheKey() {
+			return tmdbKind == null ? providerName : providerName + "/" + tmdbKind;
+		}
+
+		/*
+		 * what we asked the provider, for the flight recorder
+		 */
+		String getCall() {
+			return "movie".equals(tmdbKind) ? "search movie" : "search";
+		}
 	}
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.tinymediamanager.scraper.entities.MediaGenres;
+
+/**
+ * The class GenreMapper maps the names of genres to the genres of tmm: the English ones of IMDb (Sci-Fi, Talk-Show, ...) and the German ones
+ * of fernsehserien.de (Krimi, Sitcom, Familienserie, ...). A name as it's written in the table is found with a single lookup; other
+ * spellings are normalized (case, hyphens, umlauts, a trailing -serie or -reihe). Whatever the table doesn't know goes to
+ * MediaGenres.getGenre(), and the answer is remembered. Names without a genre of the same meaning (Magazin, Kinderserie, Jugendserie) are
+ * left out of the table on purpose, so they become genres of their own there.
+ */
+class GenreMapper {
+	// the answers for names that aren't in the table; bounded, since the names come from web pages
+	static final int MAX_REMEMBERED = 1000;
+	private static final String[] SUFFIXES = { "serie", "reihe" };
+
+	private static final Map<String, MediaGenres> TABLE;
+	private static final ConcurrentMap<String, Lookup> REMEMBERED = new ConcurrentHashMap<>();
+
+	static {
+		Map<String, MediaGenres> table = new HashMap<>();
+		// @formatter:off
+		add(table, MediaGenres.ACTION, "Action");
+		add(table, MediaGenres.ADVENTURE, "Adventure", "Abenteuer");
+		add(table, MediaGenres.ANIMATION, "Animation", "Zeichentrick", "Trickfilm", "Cartoon");
+		add(table, MediaGenres.ANIME, "Anime");
+		add(table, MediaGenres.BIOGRAPHY, "Biography", "Biografie", "Biographie");
+		add(table, MediaGenres.COMEDY, "Comedy", "Komödie", "Sitcom", "Dramedy", "Sketch-Comedy", "Satire");
+		add(table, MediaGenres.CRIME, "Crime", "Krimi", "Kriminalfilm");
+		add(table, MediaGenres.DOCUMENTARY, "Documentary", "Dokumentation", "Doku", "Dokumentarfilm", "Reportage", "Dokusoap");
+		add(table, MediaGenres.DRAMA, "Drama", "Soap", "Telenovela");
+		add(table, MediaGenres.FAMILY, "Family", "Familie");
+		add(table, MediaGenres.FANTASY, "Fantasy");
+		add(table, MediaGenres.FILM_NOIR, "Film-Noir");
+		add(table, MediaGenres.GAME_SHOW, "Game-Show", "Spielshow", "Quiz", "Quizshow", "Gameshow");
+		add(table, MediaGenres.HISTORY, "History", "Geschichte", "Historie", "Historienfilm");
+		add(table, MediaGenres.HORROR, "Horror");
+		add(table, MediaGenres.MUSIC, "Music", "Musik");
+		add(table, MediaGenres.MUSICAL, "Musical");
+		add(table, MediaGenres.MYSTERY, "Mystery");
+		add(table, MediaGenres.NEWS, "News", "Nachrichten");
+		add(table, MediaGenres.REALITY_TV, "Reality-TV", "Reality", "Castingshow");
+		add(table, MediaGenres.ROMANCE, "Romance", "Romantik", "Liebe", "Liebesfilm");
+		add(table, MediaGenres.SCIENCE_FICTION, "Sci-Fi", "Science-Fiction", "Science Fiction");
+		add(table, MediaGenres.SPORT, "Sport");
+		add(table, MediaGenres.TALK_SHOW, "Talk-Show", "Talkshow");
+		add(table, MediaGenres.THRILLER, "Thriller");
+		add(table, MediaGenres.WAR, "War", "Krieg", "Kriegsfilm");
+		add(table, MediaGenres.WESTERN, "Western");
+		// @formatter:on
+		TABLE = Collections.unmodifiableMap(table);
+	}
+
+	private GenreMapper() {
+	}
+
+	private static void add(Map<String, MediaGenres> table, MediaGenres genre, String... names) {
+		for (String name : names) {
+			table.put(name, genre);
+			table.put(normalize(name), genre);
+		}
+	}
+
+	/**
+	 * @param genre the name of a genre, e.g. Sci-Fi or Krimiserie
+	 * @return the genre of tmm, or null if genre is blank
+	 */
+	static MediaGenres getGenre(String genre) {
+		MediaGenres g = TABLE.get(genre);
+		if (g != null) {
+			return g;
+		}
+		if (StringUtils.isBlank(genre)) {
+			return null;
+		}
+		Lookup lookup = REMEMBERED.get(genre);
+		if (lookup == null) {
+			lookup = new Lookup(lookUp(genre));
+			if (REMEMBERED.size() < MAX_REMEMBERED) {
+				REMEMBERED.putIfAbsent(genre, lookup);
+			}
+		}
+		return lookup.genre;
+	}
+
+	private static MediaGenres lookUp(String genre) {
+		String key = normalize(genre);
+		MediaGenres g = TABLE.get(key);
+		for (int i = 0; g == null && i < SUFFIXES.length; i++) {
+			if (key.endsWith(SUFFIXES[i]) && key.length() > SUFFIXES[i].length()) {
+				// Krimiserie, Familienserie, Animationsserie
+				String stem = key.substring(0, key.length() - SUFFIXES[i].length());
+				g = TABLE.get(stem);
+				if (g == null && (stem.endsWith("s") || stem.endsWith("n"))) {
+					g = TABLE.get(stem.substring(0, stem.length() - 1));
+				}
+			}
+		}
+		if (g == null) {
+			g = MediaGenres.getGenre(genre.trim());
+		}
+		return g;
+	}
+
+	/**
+	 * @return the number of answers of the fallback that are remembered
+	 */
+	static int getRemembered() {
+		return REMEMBERED.size();
+	}
+
+	/**
+	 * forget the answers of the fallback
+	 */
+	static void forget() {
+		REMEMBERED.clear();
+	}
+
+	/*
+	 * lower case letters and digits only, umlauts written out: Science-Fiction, science fiction and SCIENCEFICTION are all sciencefiction
+	 */
+	static String normalize(String name) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		StringBuilder key = new StringBuilder(lower.length());
+		for (int i = 0; i < lower.length(); i++) {
+			char c = lower.charAt(i);
+			switch (c) {
+				case 'ä':
+					key.append("ae");
+					break;
+				case 'ö':
+					key.append("oe");
+					break;
+				case 'ü':
+					key.append("ue");
+					break;
+				case 'ß':
+					key.append("ss");
+					break;
+				default:
+					if (Character.isLetterOrDigit(c)) {
+						key.append(c);
+					}
+			}
+		}
+		return key.toString();
+	}
+
+	/*
+	 * an answer of the fallback; it may be null
+	 */
+	private static class Lookup {
+		final MediaGenres genre;
+
+		Lookup(MediaGenres genre) {
+			this.genre = genre;
+		}
+	}
+}
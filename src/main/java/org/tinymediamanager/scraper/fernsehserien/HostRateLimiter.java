@@ -0,0 +1,256 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The class HostRateLimiter keeps the requests to a host below a rate (a token bucket per host). When the host tells us to slow down (429,
+ * 503 or a reset connection) nothing is sent to it until the Retry-After time or an exponential backoff with jitter has passed; after that
+ * the rate starts at half of what it was and climbs back to the maximum within the ramp-up time.
+ * <p>
+ * The limiter of the http client reads the settings before every request, so it doesn't matter that it is created before the provider has
+ * loaded them, and changed settings apply without a restart.
+ */
+class HostRateLimiter {
+	private static final Logger LOGGER = LoggerFactory.getLogger(HostRateLimiter.class);
+	// the rate never drops below this, in requests per second
+	private static final double MIN_RATE = 0.5;
+	private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(1);
+	private static final long MAX_RETRY_AFTER = TimeUnit.MINUTES.toMillis(5);
+
+	private volatile double maxRate;
+	private volatile long rampUpNanos;
+	private final long baseBackoffMillis;
+	private final boolean fromSettings;
+	private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+	private final AtomicLong throttled = new AtomicLong();
+	private final AtomicLong waits = new AtomicLong();
+	private final AtomicLong waitedMillis = new AtomicLong();
+
+	/**
+	 * @param maxRate the requests per second to a host at most
+	 * @param rampUpMillis the time to get from half the rate back to the maximum; 0 to start with the maximum
+	 * @param baseBackoffMillis the wait after the first throttled request if the host doesn't say how long; doubled for every retry
+	 */
+	HostRateLimiter(double maxRate, long rampUpMillis, long baseBackoffMillis) {
+		this(maxRate, rampUpMillis, baseBackoffMillis, false);
+	}
+
+	private HostRateLimiter(double maxRate, long rampUpMillis, long baseBackoffMillis, boolean fromSettings) {
+		this.baseBackoffMillis = baseBackoffMillis;
+		this.fromSettings = fromSettings;
+		configure(maxRate, rampUpMillis);
+	}
+
+	/**
+	 * @return a limiter that follows the settings maxRequestsPerSecond and rampUpSeconds; until the first request it uses their defaults
+	 */
+	static HostRateLimiter create() {
+		return new HostRateLimiter(8, TimeUnit.SECONDS.toMillis(10), 1000, true);
+	}
+
+	/**
+	 * change the rate; buckets that are ramping up keep their current floor
+	 *
+	 * @param maxRate the requests per second to a host at most
+	 * @param rampUpMillis the time to get from half the rate back to the maximum; 0 to start with the maximum
+	 */
+	void configure(double maxRate, long rampUpMillis) {
+		this.maxRate = Math.max(MIN_RATE, maxRate);
+		this.rampUpNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, rampUpMillis));
+	}
+
+	/*
+	 * a map lookup per setting, cheap next to the request
+	 */
+	private void readSettings() {
+		configure(FernsehserienMetadataProvider.getConfigValueAsInt("maxRequestsPerSecond", 8),
+				TimeUnit.SECONDS.toMillis(FernsehserienMetadataProvider.getConfigValueAsInt("rampUpSeconds", 10)));
+	}
+
+	private class Bucket {
+		private double tokens = 1;
+		private long lastRefill = System.nanoTime();
+		private double floorRate = rampUpNanos == 0 ? maxRate : Math.max(MIN_RATE, maxRate / 2);
+		private long rampStart = lastRefill;
+		private long blockedUntil = lastRefill;
+
+		double rate(long now) {
+			double max = maxRate;
+			long rampUp = rampUpNanos;
+			long ramped = now - rampStart;
+			if (rampUp == 0 || ramped >= rampUp || floorRate >= max) {
+				return max;
+			}
+			return floorRate + (max - floorRate) * ramped / rampUp;
+		}
+
+		/**
+		 * take a token if there is one
+		 *
+		 * @return 0 if we got a token, otherwise the nanos to wait before trying again
+		 */
+		synchronized long reserve() {
+			long now = System.nanoTime();
+			if (blockedUntil - now > 0) {
+				return blockedUntil - now;
+			}
+			double rate = rate(now);
+			tokens = Math.min(Math.max(1, maxRate), tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+			lastRefill = now;
+			if (tokens >= 1) {
+				tokens -= 1;
+				return 0;
+			}
+			return Math.max(1, (long) ((1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1)));
+		}
+
+		synchronized void throttle(long pauseMillis) {
+			long now = System.nanoTime();
+			floorRate = Math.max(MIN_RATE, rate(now) / 2);
+			rampStart = now;
+			tokens = 0;
+			lastRefill = now;
+			blockedUntil = Math.max(blockedUntil - now > 0 ? blockedUntil : now, now + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+		}
+	}
+
+	private Bucket getBucket(String host) {
+		Bucket bucket = buckets.get(host);
+		if (bucket == null) {
+			Bucket created = new Bucket();
+			bucket = buckets.putIfAbsent(host, created);
+			if (bucket == null) {
+				bucket = created;
+			}
+		}
+		return bucket;
+	}
+
+	/**
+	 * wait until a request may be sent to the host
+	 *
+	 * @param host the host
+	 * @param context the scrape; we don't wait past its deadline
+	 * @throws TimeoutException if the wait would take longer than the time that is left
+	 */
+	void acquire(String host, ScrapeContext context) throws TimeoutException, InterruptedException {
+		if (fromSettings) {
+			readSettings();
+		}
+		Bucket bucket = getBucket(host);
+		long waited = 0;
+		for (long wait = bucket.reserve(); wait > 0; wait = bucket.reserve()) {
+			long waitMillis = TimeUnit.NANOSECONDS.toMillis(wait) + 1;
+			if (waitMillis > context.remainingMillis()) {
+				throw new TimeoutException("no time left waiting for " + host + " to accept requests again (" + waitMillis + "ms)");
+			}
+			Thread.sleep(waitMillis);
+			waited += waitMillis;
+		}
+		if (waited > 0) {
+			waits.incrementAndGet();
+			waitedMillis.addAndGet(waited);
+		}
+	}
+
+	/**
+	 * the host told us to slow down
+	 *
+	 * @param host the host
+	 * @param retryAfterMillis how long the host wants us to wait, or 0 if it didn't say
+	 * @param attempt the number of times this request was throttled before
+	 */
+	void throttled(String host, long retryAfterMillis, int attempt) {
+		long pause = retryAfterMillis > 0 ? Math.min(retryAfterMillis, MAX_RETRY_AFTER) : backoffMillis(attempt);
+		throttled.incrementAndGet();
+		getBucket(host).throttle(pause);
+		LOGGER.info("FERNSEHSERIEN: " + host + " asked us to slow down; pausing for " + pause + "ms");
+	}
+
+	/*
+	 * exponential backoff with jitter: base * 2^attempt, +/- 50%
+	 */
+	long backoffMillis(int attempt) {
+		long backoff = Math.min(MAX_BACKOFF, baseBackoffMillis << Math.min(attempt, 16));
+		return (long) (backoff * (0.5 + ThreadLocalRandom.current().nextDouble()));
+	}
+
+	/**
+	 * @param value the Retry-After header: seconds or a HTTP date
+	 * @return the ms to wait, or 0 if the header is missing or can't be read
+	 */
+	static long parseRetryAfter(String value) {
+		if (StringUtils.isBlank(value)) {
+			return 0;
+		}
+		value = value.trim();
+		if (StringUtils.isNumeric(value)) {
+			if (value.length() > 9) {
+				return MAX_RETRY_AFTER;
+			}
+			return Math.min(MAX_RETRY_AFTER, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+		}
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			return Math.min(MAX_RETRY_AFTER, Math.max(0, format.parse(value).getTime() - System.currentTimeMillis()));
+		}
+		catch (ParseException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @param host the host
+	 * @return the requests per second we currently allow for the host
+	 */
+	double getRate(String host) {
+		return getBucket(host).rate(System.nanoTime());
+	}
+
+	long getThrottled() {
+		return throttled.get();
+	}
+
+	long getWaits() {
+		return waits.get();
+	}
+
+	long getWaitedMillis() {
+		return waitedMillis.get();
+	}
+
+	@Override
+	public String toString() {
+		return "HostRateLimiter[maxRate=" + maxRate + ", throttled=" + getThrottled() + ", waits=" + getWaits() + ", waitedMillis="
+				+ getWaitedMillis() + "]";
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaSearchResult;
+import org.tinymediamanager.scraper.entities.MediaType;
+
+/**
+ * A search result of the fast search. It only carries the fields the fast search returns (title, year, banner and id); the full metadata
+ * of the show is scraped the first time somebody asks for it.
+ *
+ * Only a permanent failure (the show is gone, its page can't be parsed) is remembered. A result that ran out of time, or whose load was
+ * cancelled, is tried again on the next access; one that failed for a reason that may go away (the site is throttling or down) after
+ * RETRY_DELAY_MILLIS.
+ */
+class LazyMediaSearchResult extends MediaSearchResult {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LazyMediaSearchResult.class);
+	// don't hit the site again for every getter call while it's down
+	static final long RETRY_DELAY_MILLIS = 30000;
+
+	/**
+	 * The state of the full metadata of a search result
+	 */
+	enum Status {
+		PENDING,
+		LOADED,
+		FAILED,
+		TIMED_OUT,
+		UNAVAILABLE
+	}
+
+	private final FernsehserienTvShowParser parser;
+	private final MediaScrapeOptions options;
+	private volatile Status status = Status.PENDING;
+	private volatile Throwable error;
+	private final long retryDelayMillis;
+	private volatile long retryAt;
+
+	LazyMediaSearchResult(FernsehserienTvShowParser parser, MediaScrapeOptions options) {
+		this(parser, options, RETRY_DELAY_MILLIS);
+	}
+
+	LazyMediaSearchResult(FernsehserienTvShowParser parser, MediaScrapeOptions options, long retryDelayMillis) {
+		super(FernsehserienMetadataProvider.providerInfo.getId(), MediaType.TV_SHOW);
+		this.parser = parser;
+		this.options = options;
+		this.retryDelayMillis = retryDelayMillis;
+	}
+
+	@Override
+	public MediaMetadata getMediaMetadata() {
+		load();
+		return super.getMediaMetadata();
+	}
+
+	@Override
+	public String getOriginalTitle() {
+		load();
+		return super.getOriginalTitle();
+	}
+
+	@Override
+	public void setMetadata(MediaMetadata metadata) {
+		super.setMetadata(metadata);
+		if (metadata != null) {
+			status = Status.LOADED;
+		}
+	}
+
+	/**
+	 * @return true if the full metadata has already been scraped
+	 */
+	boolean isLoaded() {
+		return status == Status.LOADED;
+	}
+
+	/**
+	 * @return the state of the full metadata
+	 */
+	Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the reason why the metadata could not be scraped, or null
+	 */
+	Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * mark this result as timed out while its metadata was scraped in the background
+	 */
+	void setTimedOut(Throwable cause) {
+		if (status == Status.PENDING) {
+			error = cause;
+			status = Status.TIMED_OUT;
+		}
+	}
+
+	/**
+	 * scrape the full metadata of the show if we didn't do that before. A result that timed out during the enrichment is tried again.
+	 */
+	void load() {
+		if (!isToLoad()) {
+			return;
+		}
+		synchronized (this) {
+			if (!isToLoad()) {
+				return;
+			}
+			try {
+				// the search this result came from may be long over, so this gets a budget of its own
+				MediaMetadata metadata = parser.newScrape().getTvShowMetadata(getId(), options);
+				setOriginalTitle(metadata.getOriginalTitle());
+				super.setMetadata(metadata);
+				error = null;
+				status = Status.LOADED;
+			}
+			catch (Exception e) {
+				LOGGER.debug("could not get metadata for " + getId() + ": " + e);
+				error = e;
+				status = getFailure(e);
+				if (status == Status.UNAVAILABLE) {
+					retryAt = System.currentTimeMillis() + retryDelayMillis;
+				}
+			}
+		}
+	}
+
+	private boolean isToLoad() {
+		switch (status) {
+			case LOADED:
+			case FAILED:
+				return false;
+			case UNAVAILABLE:
+				return System.currentTimeMillis() >= retryAt;
+			default:
+				return true;
+		}
+	}
+
+	/*
+	 * TIMED_OUT if the load was cancelled or ran out of time, FAILED if trying again won't help and UNAVAILABLE otherwise
+	 */
+	static Status getFailure(Exception e) {
+		Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+		if (cause instanceof InterruptedException) {
+			// the enrichment gave up on us; keep the flag for the executor
+			Thread.currentThread().interrupt();
+			return Status.TIMED_OUT;
+		}
+		// a SocketTimeoutException is an InterruptedIOException, too
+		if (cause instanceof InterruptedIOException || cause instanceof TimeoutException || Thread.currentThread().isInterrupted()) {
+			return Status.TIMED_OUT;
+		}
+		if (cause instanceof FileNotFoundException) {
+			return Status.FAILED;
+		}
+		if (cause instanceof IOException) {
+			String kind = ScraperMetrics.getCause(cause);
+			// broken json, or a 4xx other than 408 (timeout) and 429 (too many requests), won't be different next time
+			if ("parse".equals(kind) || kind.startsWith("http4") && !"http408".equals(kind) && !"http429".equals(kind)) {
+				return Status.FAILED;
+			}
+			return Status.UNAVAILABLE;
+		}
+		// the page was there but we couldn't make sense of it
+		return Status.FAILED;
+	}
+}
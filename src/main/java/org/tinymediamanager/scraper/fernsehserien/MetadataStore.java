@@ -0,0 +1,376 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.http.TmmHttpClient;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * The class MetadataStore keeps parsed results (shows, episodes, episode guides) on disk, so that they survive a restart and can be
+ * served without a request or HTML parsing while they are fresh.
+ *
+ * The data is an append-only log: every record is [length][time written][key][JSON], a newer record of a key replaces the older one.
+ * When the store is opened the log is scanned once to build the in-memory index of key to file position (the JSON isn't read then). A
+ * record that was only partly written (e.g. the JVM died) is cut off. Whenever more than half of the log is replaced records (e.g. because
+ * pages were revalidated again and again) it is compacted, on opening as well as while records are written.
+ */
+class MetadataStore implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(MetadataStore.class);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Gson GSON = new Gson();
+	// time written (8) + key length (2)
+	private static final int RECORD_HEADER = 10;
+	private static final long MIN_COMPACT_SIZE = 1024 * 1024;
+
+	private static MetadataStore defaultStore;
+	private static boolean defaultStoreFailed;
+
+	private final File file;
+	private final ConcurrentMap<String, Location> index = new ConcurrentHashMap<>();
+	private RandomAccessFile raf;
+	private volatile FileChannel channel;
+	private long end;
+	private long garbage;
+	// after a compaction failed, the log has to grow this big before we try again
+	private long compactAgainAt;
+	// compacting moves the records; readers must not use a position of the old log in the new one
+	private final ReadWriteLock moving = new ReentrantReadWriteLock();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong stale = new AtomicLong();
+
+	/**
+	 * open (or create) the store
+	 *
+	 * @param file the log file
+	 */
+	MetadataStore(File file) throws IOException {
+		this.file = file;
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("could not create " + dir);
+		}
+		open();
+		if (isWorthCompacting()) {
+			compact();
+		}
+	}
+
+	/**
+	 * @return the store in fernsehserien in the cache folder of tmm, or null if it can't be opened
+	 */
+	static synchronized MetadataStore getDefault() {
+		if (defaultStore == null && !defaultStoreFailed) {
+			try {
+				defaultStore = new MetadataStore(new File(new File(TmmHttpClient.CACHE_DIR, "fernsehserien"), "metadata.log").getAbsoluteFile());
+				LOGGER.debug("opened " + defaultStore);
+			}
+			catch (IOException e) {
+				LOGGER.warn("could not open the metadata store: " + e);
+				defaultStoreFailed = true;
+			}
+		}
+		return defaultStore;
+	}
+
+	static synchronized void closeDefault() {
+		if (defaultStore != null) {
+			try {
+				defaultStore.close();
+			}
+			catch (IOException e) {
+				LOGGER.debug("could not close the metadata store: " + e);
+			}
+			defaultStore = null;
+		}
+	}
+
+	/**
+	 * get a stored object
+	 *
+	 * @param key the key
+	 * @param type the class of the object
+	 * @param maxAgeMillis how old the object may be
+	 * @return the object or null if it isn't stored or too old
+	 */
+	<T> T get(String key, Class<T> type, long maxAgeMillis) {
+		moving.readLock().lock();
+		try {
+			Location location = index.get(key);
+			if (location == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			if (System.currentTimeMillis() - location.written > maxAgeMillis) {
+				stale.incrementAndGet();
+				return null;
+			}
+			ByteBuffer buffer = ByteBuffer.allocate(location.length);
+			readFully(buffer, location.offset + 4);
+			buffer.flip();
+			buffer.position(RECORD_HEADER + (buffer.getShort(8) & 0xffff));
+			String json = new String(buffer.array(), buffer.position(), buffer.remaining(), UTF8);
+			T value = GSON.fromJson(json, type);
+			hits.incrementAndGet();
+			return value;
+		}
+		catch (IOException | JsonParseException e) {
+			LOGGER.debug("could not read " + key + " from the metadata store: " + e);
+			misses.incrementAndGet();
+			return null;
+		}
+		finally {
+			moving.readLock().unlock();
+		}
+	}
+
+	/**
+	 * get a stored object, no matter how old it is (e.g. to ask the site whether it changed)
+	 *
+	 * @param key the key
+	 * @param type the class of the object
+	 * @return the object or null if it isn't stored
+	 */
+	<T> T get(String key, Class<T> type) {
+		return get(key, type, Long.MAX_VALUE);
+	}
+
+	/**
+	 * store an object; it replaces the object stored with the same key before
+	 *
+	 * @param key the key
+	 * @param value the object, written as JSON
+	 */
+	void put(String key, Object value) {
+		byte[] keyBytes = key.getBytes(UTF8);
+		if (keyBytes.length > 0xffff) {
+			throw new IllegalArgumentException("key too long: " + key);
+		}
+		byte[] json = GSON.toJson(value).getBytes(UTF8);
+		long written = System.currentTimeMillis();
+		ByteBuffer buffer = ByteBuffer.allocate(4 + RECORD_HEADER + keyBytes.length + json.length);
+		buffer.putInt(RECORD_HEADER + keyBytes.length + json.length).putLong(written).putShort((short) keyBytes.length).put(keyBytes).put(json);
+		buffer.flip();
+
+		synchronized (this) {
+			if (channel == null) {
+				return;
+			}
+			try {
+				long offset = end;
+				while (buffer.hasRemaining()) {
+					channel.write(buffer, end + buffer.position());
+				}
+				end += buffer.limit();
+				Location old = index.put(key, new Location(offset, buffer.limit() - 4, written));
+				if (old != null) {
+					garbage += old.length + 4;
+				}
+				if (isWorthCompacting()) {
+					compact();
+				}
+			}
+			catch (IOException e) {
+				LOGGER.warn("could not write " + key + " to the metadata store: " + e);
+			}
+		}
+	}
+
+	/*
+	 * more than half of the log are records that were replaced
+	 */
+	private synchronized boolean isWorthCompacting() {
+		return garbage > end / 2 && end > MIN_COMPACT_SIZE && end > compactAgainAt;
+	}
+
+	int size() {
+		return index.size();
+	}
+
+	synchronized long getFileLength() {
+		return end;
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return how often a stored object was too old
+	 */
+	long getStale() {
+		return stale.get();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel != null) {
+			channel.force(false);
+			raf.close();
+			channel = null;
+			raf = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "MetadataStore[" + file + ", entries=" + size() + ", bytes=" + getFileLength() + ", hits=" + getHits() + ", misses=" + getMisses()
+				+ ", stale=" + getStale() + "]";
+	}
+
+	private synchronized void open() throws IOException {
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		index.clear();
+		garbage = 0;
+		long size = channel.size();
+		long pos = 0;
+		ByteBuffer header = ByteBuffer.allocate(4 + RECORD_HEADER);
+		while (pos + header.capacity() <= size) {
+			header.clear();
+			readFully(header, pos);
+			int length = header.getInt(0);
+			int keyLength = header.getShort(12) & 0xffff;
+			if (length < RECORD_HEADER + keyLength || pos + 4 + length > size) {
+				break;
+			}
+			ByteBuffer keyBuffer = ByteBuffer.allocate(keyLength);
+			readFully(keyBuffer, pos + header.capacity());
+			Location old = index.put(new String(keyBuffer.array(), UTF8), new Location(pos, length, header.getLong(4)));
+			if (old != null) {
+				garbage += old.length + 4;
+			}
+			pos += 4 + length;
+		}
+		if (pos < size) {
+			LOGGER.warn("cutting off " + (size - pos) + " bytes of an incomplete record in " + file);
+			channel.truncate(pos);
+		}
+		end = pos;
+	}
+
+	/*
+	 * write the current records to a new log and replace the old one with it
+	 */
+	private synchronized void compact() throws IOException {
+		moving.writeLock().lock();
+		try {
+			compactLocked();
+		}
+		catch (IOException e) {
+			// not again on every put
+			compactAgainAt = end + MIN_COMPACT_SIZE;
+			throw e;
+		}
+		finally {
+			moving.writeLock().unlock();
+		}
+	}
+
+	private void compactLocked() throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		long before = end;
+		try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+			out.setLength(0);
+			FileChannel outChannel = out.getChannel();
+			long pos = 0;
+			for (Location location : index.values()) {
+				ByteBuffer record = ByteBuffer.allocate(4 + location.length);
+				readFully(record, location.offset);
+				record.flip();
+				while (record.hasRemaining()) {
+					outChannel.write(record, pos + record.position());
+				}
+				pos += record.limit();
+			}
+			outChannel.force(false);
+		}
+		close();
+		try {
+			replaceWith(tmp);
+		}
+		finally {
+			// if the move failed (e.g. a virus scanner holds the file on Windows) the old log is still there and we go on with it
+			try {
+				open();
+			}
+			finally {
+				Files.deleteIfExists(tmp.toPath());
+			}
+		}
+		LOGGER.debug("compacted " + file + " from " + before + " to " + end + " bytes");
+	}
+
+	/*
+	 * put the compacted copy in place of the log
+	 */
+	void replaceWith(File compacted) throws IOException {
+		Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void readFully(ByteBuffer buffer, long position) throws IOException {
+		FileChannel ch = channel;
+		if (ch == null) {
+			throw new IOException("the metadata store is closed");
+		}
+		long pos = position;
+		while (buffer.hasRemaining()) {
+			int read = ch.read(buffer, pos);
+			if (read < 0) {
+				throw new EOFException();
+			}
+			pos += read;
+		}
+	}
+
+	private static class Location {
+		final long offset;
+		// the length of the record without the length field
+		final int length;
+		final long written;
+
+		Location(long offset, int length, long written) {
+			this.offset = offset;
+			this.length = length;
+			this.written = written;
+		}
+	}
+}
@@ -18,9 +18,7 @@ package org.tinymediamanager.scraper.fernsehserien;
 import org.tinymediamanager.scraper.MediaMetadata;
 import org.tinymediamanager.scraper.MediaScrapeOptions;
 import org.tinymediamanager.scraper.mediaprovider.IMovieMetadataProvider;
-import org.tinymediamanager.scraper.util.PluginManager;
 
-import java.util.List;
 import java.util.concurrent.Callable;
 
 class OtherMovieMediaMetaDataWorker implements Callable<MediaMetadata> {
@@ -34,23 +32,22 @@ class OtherMovieMediaMetaDataWorker implements Callable<MediaMetadata> {
 
 	@Override
 	public MediaMetadata call() throws Exception {
-		try {
-			IMovieMetadataProvider otherProvider = null;
-			List<IMovieMetadataProvider> providers = PluginManager.getInstance().getPluginsForInterface(IMovieMetadataProvider.class);
-			for (IMovieMetadataProvider provider : providers) {
-				if (otherProviderName.equals(provider.getProviderInfo().getId())) {
-					otherProvider = provider;
-					break;
-				}
-			}
-			if (otherProvider == null) {
-				return null;
-			}
+		ProviderRegistry registry = ProviderRegistry.getInstance();
+		IMovieMetadataProvider otherProvider = registry.get(IMovieMetadataProvider.class, otherProviderName);
+		if (otherProvider == null) {
+			return null;
+		}
 
+		long start = System.nanoTime();
+		try {
 			return otherProvider.getMetadata(options);
 		}
 		catch (Exception e) {
-			return null;
+			registry.recordFailure(otherProviderName, "get metadata", e);
+			throw e;
+		}
+		finally {
+			ScraperMetrics.getInstance().recordProvider(otherProviderName, "metadata", start);
 		}
 	}
 }
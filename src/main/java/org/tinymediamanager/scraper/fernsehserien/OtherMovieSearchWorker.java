@@ -18,7 +18,6 @@ package org.tinymediamanager.scraper.fernsehserien;
 import org.tinymediamanager.scraper.MediaSearchOptions;
 import org.tinymediamanager.scraper.MediaSearchResult;
 import org.tinymediamanager.scraper.mediaprovider.IMovieMetadataProvider;
-import org.tinymediamanager.scraper.util.PluginManager;
 
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -34,23 +33,20 @@ class OtherMovieSearchWorker implements Callable<List<MediaSearchResult>> {
 
 	@Override
 	public List<MediaSearchResult> call() throws Exception {
-		try {
-			IMovieMetadataProvider otherProvider = null;
-			List<IMovieMetadataProvider> providers = PluginManager.getInstance().getPluginsForInterface(IMovieMetadataProvider.class);
-			for (IMovieMetadataProvider provider : providers) {
-				if (otherProviderName.equals(provider.getProviderInfo().getId())) {
-					otherProvider = provider;
-					break;
-				}
-			}
-			if (otherProvider == null) {
-				return null;
-			}
+		ProviderRegistry registry = ProviderRegistry.getInstance();
+		// not a "no match": the caller must not remember that
+		IMovieMetadataProvider otherProvider = registry.require(IMovieMetadataProvider.class, otherProviderName);
 
+		long start = System.nanoTime();
+		try {
 			return otherProvider.search(options);
 		}
 		catch (Exception e) {
-			return null;
+			registry.recordFailure(otherProviderName, "search", e);
+			throw e;
+		}
+		finally {
+			ScraperMetrics.getInstance().recordProvider(otherProviderName, "search", start);
 		}
 	}
 }
@@ -18,9 +18,7 @@ package org.tinymediamanager.scraper.fernsehserien;
 import org.tinymediamanager.scraper.MediaMetadata;
 import org.tinymediamanager.scraper.MediaScrapeOptions;
 import org.tinymediamanager.scraper.mediaprovider.ITvShowMetadataProvider;
-import org.tinymediamanager.scraper.util.PluginManager;
 
-import java.util.List;
 import java.util.concurrent.Callable;
 
 class OtherTvShowMediaMetaDataWorker implements Callable<MediaMetadata> {
@@ -34,23 +32,22 @@ class OtherTvShowMediaMetaDataWorker implements Callable<MediaMetadata> {
 
 	@Override
 	public MediaMetadata call() throws Exception {
-		try {
-			ITvShowMetadataProvider otherProvider = null;
-			List<ITvShowMetadataProvider> providers = PluginManager.getInstance().getPluginsForInterface(ITvShowMetadataProvider.class);
-			for (ITvShowMetadataProvider provider : providers) {
-				if (otherProviderName.equals(provider.getProviderInfo().getId())) {
-					otherProvider = provider;
-					break;
-				}
-			}
-			if (otherProvider == null) {
-				return null;
-			}
+		ProviderRegistry registry = ProviderRegistry.getInstance();
+		ITvShowMetadataProvider otherProvider = registry.get(ITvShowMetadataProvider.class, otherProviderName);
+		if (otherProvider == null) {
+			return null;
+		}
 
+		long start = System.nanoTime();
+		try {
 			return otherProvider.getMetadata(options);
 		}
 		catch (Exception e) {
-			return null;
+			registry.recordFailure(otherProviderName, "get metadata", e);
+			throw e;
+		}
+		finally {
+			ScraperMetrics.getInstance().recordProvider(otherProviderName, "metadata", start);
 		}
 	}
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The class PageValidators holds the ETag and Last-Modified header of a page we parsed, so that we can ask the site whether the page
+ * changed since then. The length of the page is kept to count the bytes we didn't have to download again.
+ */
+class PageValidators {
+	String etag;
+	String lastModified;
+	long length;
+
+	PageValidators() {
+	}
+
+	PageValidators(String etag, String lastModified) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * @return true if there's something to send with a conditional request
+	 */
+	boolean isPresent() {
+		return StringUtils.isNotBlank(etag) || StringUtils.isNotBlank(lastModified);
+	}
+}
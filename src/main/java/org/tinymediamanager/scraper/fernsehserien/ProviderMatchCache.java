@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.tinymediamanager.scraper.MediaSearchResult;
+
+/**
+ * The class ProviderMatchCache remembers which search result of another provider (tvdb, tmdb, imdb) we accepted for a title and year -
+ * or that there was none - so that scraping a show again doesn't have to search the other providers again. Entries expire after their
+ * time to live; "no match" entries usually live shorter, since the other provider might add the show later.
+ */
+class ProviderMatchCache {
+	private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+	private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+	/**
+	 * The outcome of a lookup
+	 */
+	static class Match {
+		private final MediaSearchResult result;
+
+		Match(MediaSearchResult result) {
+			this.result = result;
+		}
+
+		/**
+		 * @return the accepted search result, or null if the provider had no match
+		 */
+		MediaSearchResult getResult() {
+			return result;
+		}
+
+		boolean isNoMatch() {
+			return result == null;
+		}
+	}
+
+	private final int maxEntries;
+	private final long ttlNanos;
+	private final long noMatchTtlNanos;
+	private final LinkedHashMap<String, Entry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxEntries the maximum number of matches kept
+	 * @param ttlMillis the time in ms a match is kept
+	 * @param noMatchTtlMillis the time in ms a "no match" is kept
+	 */
+	ProviderMatchCache(final int maxEntries, long ttlMillis, long noMatchTtlMillis) {
+		this.maxEntries = maxEntries;
+		this.ttlNanos = ttlMillis * 1000000L;
+		this.noMatchTtlNanos = noMatchTtlMillis * 1000000L;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > ProviderMatchCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * get the cached match
+	 *
+	 * @param provider the provider and kind, e.g. tvdb or tmdb/movie
+	 * @param title the searched title
+	 * @param year the searched year (0 if unknown)
+	 * @return the match, or null if we don't know yet
+	 */
+	synchronized Match get(String provider, String title, int year) {
+		String key = key(provider, title, year);
+		Entry entry = entries.get(key);
+		if (entry != null && System.nanoTime() - entry.expires > 0) {
+			entries.remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.match;
+	}
+
+	/**
+	 * remember the accepted search result
+	 *
+	 * @param result the result, or null if the provider had no match
+	 */
+	synchronized void put(String provider, String title, int year, MediaSearchResult result) {
+		long expires = System.nanoTime() + (result == null ? noMatchTtlNanos : ttlNanos);
+		entries.put(key(provider, title, year), new Entry(new Match(result), expires));
+	}
+
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the share of lookups that were answered from the cache, between 0 and 1
+	 */
+	double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT, "ProviderMatchCache[size=%d, hits=%d, misses=%d, hitRate=%.2f]", size(), getHits(), getMisses(),
+				getHitRate());
+	}
+
+	/*
+	 * "Malcolm mittendrin", "malcolm - Mittendrin" and "Malcolm Mittendrin!" are the same search
+	 */
+	static String normalizeTitle(String title) {
+		if (title == null) {
+			return "";
+		}
+		String normalized = Normalizer.normalize(title, Normalizer.Form.NFD);
+		normalized = DIACRITICS.matcher(normalized).replaceAll("");
+		normalized = NON_ALPHANUMERIC.matcher(normalized).replaceAll(" ");
+		return normalized.trim().toLowerCase(Locale.ROOT);
+	}
+
+	private static String key(String provider, String title, int year) {
+		return provider + "|" + normalizeTitle(title) + "|" + year;
+	}
+
+	private static class Entry {
+		final Match match;
+		final long expires;
+
+		Entry(Match match, long expires) {
+			this.match = match;
+			this.expires = expires;
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.mediaprovider.IMediaProvider;
+import org.tinymediamanager.scraper.util.PluginManager;
+
+/**
+ * The class ProviderRegistry finds the other metadata providers (tvdb, tmdb, imdb) by their id. The plugins are looked up once per
+ * interface and kept until the plugin manager changes, the registry is invalidated, or a provider isn't found and the last lookup is
+ * older than a minute (it might have been loaded in the meantime).
+ *
+ * The registry also remembers why a provider failed the last time, so that this doesn't get lost in the background threads.
+ */
+class ProviderRegistry {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ProviderRegistry.class);
+	private static final long REFRESH_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+	private static volatile ProviderRegistry instance = new ProviderRegistry();
+
+	private final ConcurrentMap<Class<?>, Snapshot> snapshots = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Failure> failures = new ConcurrentHashMap<>();
+
+	static ProviderRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * use another registry, e.g. one with stand-ins for the other providers
+	 *
+	 * @return the registry that was used so far
+	 */
+	static ProviderRegistry setInstance(ProviderRegistry registry) {
+		ProviderRegistry previous = instance;
+		instance = registry;
+		return previous;
+	}
+
+	/**
+	 * get the provider with the given id
+	 *
+	 * @param type the interface the provider has to implement
+	 * @param providerId the id of the provider, e.g. tvdb
+	 * @return the provider or null if it isn't installed
+	 */
+	<T extends IMediaProvider> T get(Class<T> type, String providerId) {
+		Object owner = getOwner();
+		Snapshot snapshot = snapshots.get(type);
+		if (snapshot == null || snapshot.owner != owner) {
+			snapshot = resolve(type, owner);
+		}
+		IMediaProvider provider = snapshot.providers.get(providerId);
+		if (provider == null && System.nanoTime() - snapshot.created > REFRESH_INTERVAL) {
+			snapshot = resolve(type, owner);
+			provider = snapshot.providers.get(providerId);
+		}
+		if (provider == null) {
+			recordFailure(providerId, "lookup", "no " + type.getSimpleName() + " installed");
+			return null;
+		}
+		return type.cast(provider);
+	}
+
+	/**
+	 * get the provider with the given id, for callers that have to tell a missing provider from one that found nothing
+	 *
+	 * @param type the interface the provider has to implement
+	 * @param providerId the id of the provider, e.g. tvdb
+	 * @return the provider
+	 * @throws NotInstalledException if it isn't installed
+	 */
+	<T extends IMediaProvider> T require(Class<T> type, String providerId) throws NotInstalledException {
+		T provider = get(type, providerId);
+		if (provider == null) {
+			throw new NotInstalledException("no " + type.getSimpleName() + " " + providerId + " installed");
+		}
+		return provider;
+	}
+
+	/**
+	 * forget the providers, e.g. because the plugins are reloaded
+	 */
+	void invalidate() {
+		snapshots.clear();
+	}
+
+	/**
+	 * remember why a provider failed
+	 *
+	 * @param providerId the id of the provider
+	 * @param operation what we tried to do, e.g. search
+	 * @param e the exception
+	 */
+	void recordFailure(String providerId, String operation, Throwable e) {
+		recordFailure(providerId, operation, e.toString());
+		ScraperMetrics.getInstance().recordError("provider." + providerId, e);
+		LOGGER.debug(providerId + " failed to " + operation + ": " + e);
+	}
+
+	private void recordFailure(String providerId, String operation, String reason) {
+		Failure previous = failures.get(providerId);
+		failures.put(providerId, new Failure(operation + ": " + reason, previous == null ? 1 : previous.count + 1));
+	}
+
+	/**
+	 * @param providerId the id of the provider
+	 * @return the reason why the provider failed the last time, or null
+	 */
+	String getLastFailure(String providerId) {
+		Failure failure = failures.get(providerId);
+		return failure == null ? null : failure.reason;
+	}
+
+	/**
+	 * @return for each provider that failed: the last reason and how often it failed
+	 */
+	Map<String, String> getFailures() {
+		Map<String, String> result = new TreeMap<>();
+		for (Map.Entry<String, Failure> entry : failures.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().reason + " (" + entry.getValue().count + "x)");
+		}
+		return result;
+	}
+
+	/*
+	 * the object the snapshots belong to; a new plugin manager means the plugins were loaded again
+	 */
+	protected Object getOwner() {
+		return PluginManager.getInstance();
+	}
+
+	protected <T extends IMediaProvider> List<T> lookup(Class<T> type) {
+		return PluginManager.getInstance().getPluginsForInterface(type);
+	}
+
+	private Snapshot resolve(Class<? extends IMediaProvider> type, Object owner) {
+		Map<String, IMediaProvider> providers = new HashMap<>();
+		for (IMediaProvider provider : lookup(type)) {
+			try {
+				String id = provider.getProviderInfo().getId();
+				if (!providers.containsKey(id)) {
+					providers.put(id, provider);
+				}
+			}
+			catch (Exception e) {
+				recordFailure(provider.getClass().getName(), "lookup", e);
+			}
+		}
+		Snapshot snapshot = new Snapshot(owner, Collections.unmodifiableMap(providers));
+		snapshots.put(type, snapshot);
+		LOGGER.debug("found " + type.getSimpleName() + " plugins " + providers.keySet());
+		return snapshot;
+	}
+
+	/**
+	 * Thrown if another provider isn't installed (yet)
+	 */
+	static class NotInstalledException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		NotInstalledException(String message) {
+			super(message);
+		}
+	}
+
+	private static class Snapshot {
+		final Object owner;
+		final Map<String, IMediaProvider> providers;
+		final long created = System.nanoTime();
+
+		Snapshot(Object owner, Map<String, IMediaProvider> providers) {
+			this.owner = owner;
+			this.providers = providers;
+		}
+	}
+
+	private static class Failure {
+		final String reason;
+		final int count;
+
+		Failure(String reason, int count) {
+			this.reason = reason;
+			this.count = count;
+		}
+	}
+}
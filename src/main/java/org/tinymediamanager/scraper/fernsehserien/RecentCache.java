@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class RecentCache keeps answers that have no validators and don't change often (the searches) in memory for a short time, like
+ * CachedUrl did. When it is full the least recently used answer goes first.
+ */
+class RecentCache<V> {
+	private final long ttlNanos;
+	private final LinkedHashMap<String, Entry<V>> entries;
+	private final AtomicLong hits = new AtomicLong();
+
+	/**
+	 * @param maxEntries the maximum number of answers kept
+	 * @param ttlMillis how long an answer is kept
+	 */
+	RecentCache(final int maxEntries, long ttlMillis) {
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * @param key e.g. the url and the Accept-Language header
+	 * @return the answer, or null if there is none or it is too old
+	 */
+	synchronized V get(String key) {
+		Entry<V> entry = entries.get(key);
+		if (entry != null && System.nanoTime() - entry.expires > 0) {
+			entries.remove(key);
+			entry = null;
+		}
+		if (entry == null) {
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.value;
+	}
+
+	synchronized void put(String key, V value) {
+		entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+	}
+
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return how many answers were taken from memory
+	 */
+	long getHits() {
+		return hits.get();
+	}
+
+	private static class Entry<V> {
+		final V value;
+		final long expires;
+
+		Entry(V value, long expires) {
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+}
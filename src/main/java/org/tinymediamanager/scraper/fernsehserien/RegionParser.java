@@ -0,0 +1,331 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * The class RegionParser builds a DOM only of the parts of a page we read. The raw bytes are scanned for the elements that carry one of the
+ * markers (a class or id); each of those elements is cut out together with its content and only the pieces are parsed. Scripts,
+ * navigation, ads and comments around them never become DOM nodes. If a marker can't be found, or its element doesn't end, the whole
+ * page is parsed as before.
+ */
+class RegionParser {
+	private static final byte[] COMMENT_END = "-->".getBytes(StandardCharsets.US_ASCII);
+	// elements whose content isn't HTML
+	private static final byte[][] RAW_TEXT = { "script".getBytes(StandardCharsets.US_ASCII), "style".getBytes(StandardCharsets.US_ASCII) };
+	private static final byte[] CLASS = "class".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] ID = "id".getBytes(StandardCharsets.US_ASCII);
+
+	private final byte[][] markers;
+	private final AtomicLong regionParses = new AtomicLong();
+	private final AtomicLong fullParses = new AtomicLong();
+
+	/**
+	 * @param markers the class names or ids of the elements to keep; they have to be ASCII
+	 */
+	RegionParser(String... markers) {
+		this.markers = new byte[markers.length][];
+		for (int i = 0; i < markers.length; i++) {
+			this.markers[i] = markers[i].getBytes(StandardCharsets.US_ASCII);
+		}
+	}
+
+	/**
+	 * @param page the page
+	 * @param charset the charset of the page
+	 * @return a document with the marked elements, or with the whole page if they weren't all found
+	 */
+	Document parse(byte[] page, Charset charset) {
+		List<int[]> regions = isAsciiCompatible(charset) ? findRegions(page) : null;
+		if (regions == null) {
+			fullParses.incrementAndGet();
+			return Jsoup.parse(new String(page, charset), "");
+		}
+		StringBuilder html = new StringBuilder();
+		for (int[] region : regions) {
+			html.append(new String(page, region[0], region[1] - region[0], charset)).append('\n');
+		}
+		regionParses.incrementAndGet();
+		return Jsoup.parse(html.toString(), "");
+	}
+
+	private static boolean isAsciiCompatible(Charset charset) {
+		return charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII)
+				|| charset.name().startsWith("windows-125");
+	}
+
+	/**
+	 * @return the start (the '<' of the element) and end (after its end tag) of the marked elements in page order, without elements that
+	 *         are inside another one; null if a marker is missing or its element doesn't end
+	 */
+	List<int[]> findRegions(byte[] page) {
+		int[][] found = new int[markers.length][];
+		int missing = markers.length;
+		for (int lt = nextTag(page, 0); lt >= 0 && missing > 0; lt = nextTag(page, skipRawText(page, lt) + 1)) {
+			int gt = indexOf(page, '>', lt);
+			if (gt < 0) {
+				return null;
+			}
+			for (int i = 0; i < markers.length; i++) {
+				if (found[i] == null && containsToken(page, lt, gt, markers[i])) {
+					int end = findElementEnd(page, lt);
+					if (end < 0) {
+						return null;
+					}
+					found[i] = new int[] { lt, end };
+					missing--;
+				}
+			}
+		}
+		if (missing > 0) {
+			return null;
+		}
+		Arrays.sort(found, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b) {
+				return Integer.compare(a[0], b[0]);
+			}
+		});
+		List<int[]> regions = new ArrayList<>();
+		int end = -1;
+		for (int[] region : found) {
+			if (region[0] >= end) {
+				regions.add(region);
+				end = region[1];
+			}
+		}
+		return regions;
+	}
+
+	/*
+	 * the '<' of the next start or end tag at or after from; comments and the content of scripts and styles are skipped
+	 */
+	private static int nextTag(byte[] page, int from) {
+		int lt = indexOf(page, '<', from);
+		while (lt >= 0 && lt + 1 < page.length) {
+			if (startsWith(page, lt + 1, "!--")) {
+				int commentEnd = indexOf(page, COMMENT_END, lt + 4, page.length);
+				return commentEnd < 0 ? -1 : nextTag(page, commentEnd + COMMENT_END.length);
+			}
+			if (page[lt + 1] == '/' || isNameStart(page[lt + 1])) {
+				return lt;
+			}
+			lt = indexOf(page, '<', lt + 1);
+		}
+		return -1;
+	}
+
+	/*
+	 * the position after the end tag that closes the element starting at tagStart, or -1
+	 */
+	private static int findElementEnd(byte[] page, int tagStart) {
+		int nameEnd = tagStart + 1;
+		while (nameEnd < page.length && isNameChar(page[nameEnd])) {
+			nameEnd++;
+		}
+		byte[] name = Arrays.copyOfRange(page, tagStart + 1, nameEnd);
+		int depth = 0;
+		for (int lt = tagStart; lt >= 0; lt = nextTag(page, skipRawText(page, lt) + 1)) {
+			if (isTag(page, lt + 1, name)) {
+				depth++;
+			}
+			else if (page[lt + 1] == '/' && isTag(page, lt + 2, name) && --depth == 0) {
+				int gt = indexOf(page, '>', lt);
+				return gt < 0 ? -1 : gt + 1;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * the content of scripts and styles may contain anything, even what looks like tags or markers
+	 *
+	 * @return the '<' of the end tag if lt is a script or style, otherwise lt; page.length if the end tag is missing
+	 */
+	private static int skipRawText(byte[] page, int lt) {
+		for (byte[] name : RAW_TEXT) {
+			if (isTag(page, lt + 1, name)) {
+				for (int end = indexOf(page, '<', lt + 1); end >= 0; end = indexOf(page, '<', end + 1)) {
+					if (end + 1 < page.length && page[end + 1] == '/' && isTag(page, end + 2, name)) {
+						return end;
+					}
+				}
+				return page.length;
+			}
+		}
+		return lt;
+	}
+
+	/*
+	 * the marker as a whole word in the value of the class or id attribute of the tag from lt to gt; links, alt texts and data attributes may
+	 * contain it too
+	 */
+	private static boolean containsToken(byte[] page, int lt, int gt, byte[] marker) {
+		if (page[lt + 1] == '/') {
+			return false;
+		}
+		int at = lt + 1;
+		while (at < gt && isNameChar(page[at])) {
+			at++;
+		}
+		while (at < gt) {
+			if (isBlank(page[at]) || page[at] == '/') {
+				at++;
+				continue;
+			}
+			int nameStart = at;
+			while (at < gt && !isBlank(page[at]) && page[at] != '=' && page[at] != '/') {
+				at++;
+			}
+			int nameEnd = at;
+			while (at < gt && isBlank(page[at])) {
+				at++;
+			}
+			if (at == gt || page[at] != '=') {
+				// an attribute without a value
+				continue;
+			}
+			at++;
+			while (at < gt && isBlank(page[at])) {
+				at++;
+			}
+			int valueStart;
+			int valueEnd;
+			if (at < gt && (page[at] == '"' || page[at] == '\'')) {
+				valueStart = at + 1;
+				valueEnd = indexOf(page, (char) page[at], valueStart);
+				if (valueEnd < 0 || valueEnd > gt) {
+					valueEnd = gt;
+				}
+				at = valueEnd + 1;
+			}
+			else {
+				valueStart = at;
+				while (at < gt && !isBlank(page[at])) {
+					at++;
+				}
+				valueEnd = at;
+			}
+			if ((isAttribute(page, nameStart, nameEnd, CLASS) || isAttribute(page, nameStart, nameEnd, ID))
+					&& containsWord(page, valueStart, valueEnd, marker)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isAttribute(byte[] page, int from, int to, byte[] name) {
+		return to - from == name.length && isTag(page, from, name);
+	}
+
+	/*
+	 * the marker between blanks or the ends of the value from from to to
+	 */
+	private static boolean containsWord(byte[] page, int from, int to, byte[] marker) {
+		for (int at = indexOf(page, marker, from, to); at >= 0; at = indexOf(page, marker, at + 1, to)) {
+			if ((at == from || isBlank(page[at - 1])) && (at + marker.length == to || isBlank(page[at + marker.length]))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isBlank(byte b) {
+		return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+	}
+
+	private static boolean isNameStart(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+	}
+
+	private static boolean isNameChar(byte b) {
+		return isNameStart(b) || (b >= '0' && b <= '9');
+	}
+
+	/*
+	 * the tag name at the position, followed by something that ends a tag name
+	 */
+	private static boolean isTag(byte[] page, int at, byte[] name) {
+		if (at + name.length >= page.length) {
+			return false;
+		}
+		for (int i = 0; i < name.length; i++) {
+			if (Character.toLowerCase(page[at + i]) != name[i]) {
+				return false;
+			}
+		}
+		return !isNameChar(page[at + name.length]);
+	}
+
+	private static boolean startsWith(byte[] page, int at, String prefix) {
+		if (at + prefix.length() > page.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length(); i++) {
+			if (page[at + i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] page, char c, int from) {
+		for (int i = from; i < page.length; i++) {
+			if (page[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * the needle between from and to (exclusive), or -1
+	 */
+	private static int indexOf(byte[] page, byte[] needle, int from, int to) {
+		outer: for (int i = from; i <= to - needle.length; i++) {
+			for (int j = 0; j < needle.length; j++) {
+				if (page[i + j] != needle[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	long getRegionParses() {
+		return regionParses.get();
+	}
+
+	long getFullParses() {
+		return fullParses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "RegionParser[regionParses=" + getRegionParses() + ", fullParses=" + getFullParses() + "]";
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class ScrapeContext holds the deadline of one search or scrape. It is created when the provider is called and handed down to every
+ * request and every wait for a background task, so a hanging site or provider can't block the caller for longer than the budget.
+ */
+class ScrapeContext {
+	private static final AtomicLong IDS = new AtomicLong();
+
+	private final long id = IDS.incrementAndGet();
+	private final long budgetMillis;
+	private final long deadline;
+
+	/**
+	 * @param budgetMillis the time in ms the whole scrape may take
+	 */
+	ScrapeContext(long budgetMillis) {
+		this.budgetMillis = budgetMillis;
+		this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+	}
+
+	/**
+	 * @return a context with the budget from the settings (scrapeTimeout in seconds)
+	 */
+	static ScrapeContext create() {
+		return new ScrapeContext(TimeUnit.SECONDS.toMillis(FernsehserienMetadataProvider.getConfigValueAsInt("scrapeTimeout", 60)));
+	}
+
+	/**
+	 * @return the id of the scrape, e.g. to find its events in a flight recording
+	 */
+	long getId() {
+		return id;
+	}
+
+	long getBudgetMillis() {
+		return budgetMillis;
+	}
+
+	/**
+	 * @return the time in ms that is left, never less than 0; rounded up, so waiting that long always reaches the deadline
+	 */
+	long remainingMillis() {
+		long remaining = deadline - System.nanoTime();
+		return remaining <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(remaining + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+	}
+
+	boolean isExpired() {
+		return deadline - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * throw if there's no time left for the next step
+	 *
+	 * @param what the step, for the message
+	 */
+	void checkDeadline(String what) throws TimeoutException {
+		if (isExpired()) {
+			throw new TimeoutException("no time left for " + what + " (budget " + budgetMillis + "ms)");
+		}
+	}
+
+	/**
+	 * the timeout to use for a connect or read of a single request
+	 *
+	 * @param maxMillis the timeout to use if there's enough time left
+	 * @return the timeout in ms, at least 1 (0 would mean no timeout at all)
+	 */
+	int timeoutMillis(int maxMillis) {
+		return (int) Math.max(1, Math.min(maxMillis, remainingMillis()));
+	}
+
+	/**
+	 * wait for a background task, but not longer than the time that is left. A task that doesn't finish in time is cancelled.
+	 *
+	 * @param future the task
+	 * @param what the task, for the message
+	 * @return the result of the task
+	 */
+	<T> T await(Future<T> future, String what) throws InterruptedException, ExecutionException, TimeoutException {
+		try {
+			return future.get(remainingMillis(), TimeUnit.MILLISECONDS);
+		}
+		catch (TimeoutException e) {
+			future.cancel(true);
+			throw new TimeoutException(what + " didn't finish within the budget of " + budgetMillis + "ms");
+		}
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The class ScraperEvents emits Java Flight Recorder events for every fetch from the site, every parsed page and every wait for another
+ * provider. All events carry the id of the scrape they belong to, so a recording shows why one scrape was slow.
+ *
+ * The scraper is built for Java 7, so the event types are defined at runtime with jdk.jfr.EventFactory. On a JRE without it, and as long as
+ * no recording is running, begin() only returns a no-op event.
+ */
+class ScraperEvents {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ScraperEvents.class);
+	private static final String PREFIX = "org.tinymediamanager.scraper.fernsehserien.";
+
+	// the kinds of pages
+	static final String FAST_SEARCH = "fastSearch";
+	static final String SEARCH_PAGE = "searchPage";
+	static final String SHOW_PAGE = "showPage";
+	static final String EPISODE_GUIDE = "episodeGuide";
+	static final String EPISODE_PAGE = "episodePage";
+
+	static final Kind FETCH = new Kind("Fetch", "Fernsehserien Fetch", "A request to fernsehserien.de, until the response was read",
+			field(long.class, "scrapeId", "Scrape Id"), field(String.class, "pageKind", "Page Kind"), field(String.class, "url", "URL"),
+			field(int.class, "status", "HTTP Status"), field(long.class, "bytes", "Bytes"),
+			field(boolean.class, "cacheHit", "Cache Hit"), field(String.class, "error", "Error"));
+	static final Kind PARSE = new Kind("Parse", "Fernsehserien Parse", "A page of fernsehserien.de was parsed",
+			field(long.class, "scrapeId", "Scrape Id"), field(String.class, "pageKind", "Page Kind"), field(int.class, "elements", "Elements"));
+	static final Kind PROVIDER_CALL = new Kind("ProviderCall", "Fernsehserien Provider Call",
+			"The scrape waited for another provider (tvdb, tmdb, imdb)", field(long.class, "scrapeId", "Scrape Id"),
+			field(String.class, "provider", "Provider"), field(String.class, "call", "Call"), field(String.class, "outcome", "Outcome"));
+
+	private ScraperEvents() {
+	}
+
+	/**
+	 * @param url a url of fernsehserien.de
+	 * @return what kind of page it is, e.g. EPISODE_GUIDE
+	 */
+	static String getPageKind(String url) {
+		if (url.contains("/fastsearch?")) {
+			return FAST_SEARCH;
+		}
+		if (url.contains("/suche/")) {
+			return SEARCH_PAGE;
+		}
+		if (url.endsWith("/episodenguide")) {
+			return EPISODE_GUIDE;
+		}
+		if (url.contains("/folgen/")) {
+			return EPISODE_PAGE;
+		}
+		return SHOW_PAGE;
+	}
+
+	/**
+	 * @param e why waiting for another provider failed
+	 * @return the outcome of the provider call, e.g. failed: timeout
+	 */
+	static String getOutcome(Exception e) {
+		Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+		return "failed: " + ScraperMetrics.getCause(cause);
+	}
+
+	private static Object[] field(Class<?> type, String name, String label) {
+		return new Object[] { type, name, label };
+	}
+
+	/**
+	 * A type of event
+	 */
+	static class Kind {
+		private final String name;
+		private Object factory;
+		private Object eventType;
+
+		Kind(String name, String label, String description, Object[]... fields) {
+			this.name = PREFIX + name;
+			if (!Jfr.AVAILABLE) {
+				return;
+			}
+			try {
+				List<Object> annotations = new ArrayList<>();
+				annotations.add(Jfr.annotation(Jfr.NAME, this.name));
+				annotations.add(Jfr.annotation(Jfr.LABEL, label));
+				annotations.add(Jfr.annotation(Jfr.DESCRIPTION, description));
+				annotations.add(Jfr.annotation(Jfr.CATEGORY, new String[] { "tinyMediaManager", "fernsehserien" }));
+				List<Object> descriptors = new ArrayList<>();
+				for (Object[] field : fields) {
+					descriptors.add(Jfr.VALUE_DESCRIPTOR.newInstance(field[0], field[1],
+							Collections.singletonList(Jfr.annotation(Jfr.LABEL, field[2]))));
+				}
+				factory = Jfr.CREATE.invoke(null, annotations, descriptors);
+				eventType = Jfr.GET_EVENT_TYPE.invoke(factory);
+			}
+			catch (Exception e) {
+				LOGGER.debug("could not define the event " + this.name + ": " + e);
+				factory = null;
+			}
+		}
+
+		String getName() {
+			return name;
+		}
+
+		/**
+		 * @return true if a recording is running that records this event
+		 */
+		boolean isEnabled() {
+			try {
+				return eventType != null && (Boolean) Jfr.IS_ENABLED.invoke(eventType);
+			}
+			catch (Exception e) {
+				return false;
+			}
+		}
+
+		/**
+		 * start an event; its duration lasts until it is committed
+		 *
+		 * @return the event; a no-op if nobody records it
+		 */
+		Event begin() {
+			if (!isEnabled()) {
+				return Event.DISABLED;
+			}
+			try {
+				Object event = Jfr.NEW_EVENT.invoke(factory);
+				Jfr.BEGIN.invoke(event);
+				return new Event(event);
+			}
+			catch (Exception e) {
+				return Event.DISABLED;
+			}
+		}
+	}
+
+	/**
+	 * An event that has been started
+	 */
+	static class Event {
+		static final Event DISABLED = new Event(null);
+
+		private final Object event;
+
+		private Event(Object event) {
+			this.event = event;
+		}
+
+		/**
+		 * @return false for the no-op event; then the values don't need to be computed
+		 */
+		boolean isEnabled() {
+			return event != null;
+		}
+
+		/**
+		 * end the event and record it
+		 *
+		 * @param values the values of the fields in the order they were defined (boxed like the field types)
+		 */
+		void commit(Object... values) {
+			if (event == null) {
+				return;
+			}
+			try {
+				for (int i = 0; i < values.length; i++) {
+					Jfr.SET.invoke(event, i, values[i]);
+				}
+				Jfr.END.invoke(event);
+				Jfr.COMMIT.invoke(event);
+			}
+			catch (Exception e) {
+				LOGGER.debug("could not record an event: " + e);
+			}
+		}
+	}
+
+	/*
+	 * the parts of the jdk.jfr API we need; not there before Java 9
+	 */
+	private static class Jfr {
+		static final boolean AVAILABLE;
+		static Class<?> NAME;
+		static Class<?> LABEL;
+		static Class<?> DESCRIPTION;
+		static Class<?> CATEGORY;
+		static Constructor<?> ANNOTATION_ELEMENT;
+		static Constructor<?> VALUE_DESCRIPTOR;
+		static Method CREATE;
+		static Method GET_EVENT_TYPE;
+		static Method NEW_EVENT;
+		static Method IS_ENABLED;
+		static Method BEGIN;
+		static Method END;
+		static Method COMMIT;
+		static Method SET;
+
+		static {
+			boolean available = false;
+			try {
+				NAME = Class.forName("jdk.jfr.Name");
+				LABEL = Class.forName("jdk.jfr.Label");
+				DESCRIPTION = Class.forName("jdk.jfr.Description");
+				CATEGORY = Class.forName("jdk.jfr.Category");
+				ANNOTATION_ELEMENT = Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+				VALUE_DESCRIPTOR = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+				Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+				CREATE = eventFactory.getMethod("create", List.class, List.class);
+				GET_EVENT_TYPE = eventFactory.getMethod("getEventType");
+				NEW_EVENT = eventFactory.getMethod("newEvent");
+				IS_ENABLED = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+				Class<?> event = Class.forName("jdk.jfr.Event");
+				BEGIN = event.getMethod("begin");
+				END = event.getMethod("end");
+				COMMIT = event.getMethod("commit");
+				SET = event.getMethod("set", int.class, Object.class);
+				available = true;
+			}
+			catch (Exception | LinkageError e) {
+				LOGGER.debug("no flight recorder events on this JRE: " + e);
+			}
+			AVAILABLE = available;
+		}
+
+		static Object annotation(Class<?> type, Object value) throws Exception {
+			return ANNOTATION_ELEMENT.newInstance(type, value);
+		}
+	}
+}
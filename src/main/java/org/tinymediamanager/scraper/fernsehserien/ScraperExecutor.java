@@ -0,0 +1,324 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The class ScraperExecutor runs the background work of the scraper. There are two of them: one for requests to fernsehserien.de (show
+ * and episode pages) and one for the searches at the other providers. They are separate so that a site task waiting for a provider task
+ * can never block the pool the provider task needs.
+ *
+ * Each executor either uses a fixed number of daemon threads or - with executorMode "virtual" on a JRE that supports it - one virtual
+ * thread per task, limited to the same number of tasks running at once. The executors are created on first use and shut down with the
+ * plugin (or the JVM).
+ */
+class ScraperExecutor {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ScraperExecutor.class);
+
+	static final String MODE_THREADS = "threads";
+	static final String MODE_VIRTUAL = "virtual";
+
+	private static ScraperExecutor site;
+	private static ScraperExecutor providers;
+	private static boolean shutdownHookInstalled;
+
+	private final String name;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final int size;
+	private final boolean virtual;
+
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	ScraperExecutor(String name, int size, String mode) {
+		this.name = name;
+		this.size = Math.max(1, size);
+		ExecutorService virtualExecutor = MODE_VIRTUAL.equals(mode) ? newVirtualThreadPerTaskExecutor() : null;
+		if (virtualExecutor != null) {
+			this.executor = virtualExecutor;
+			this.permits = new Semaphore(this.size);
+			this.virtual = true;
+		}
+		else {
+			if (MODE_VIRTUAL.equals(mode)) {
+				LOGGER.info("virtual threads are not available on this JRE; using " + this.size + " threads for " + name);
+			}
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(this.size, this.size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new DaemonThreadFactory("fernsehserien-" + name));
+			pool.allowCoreThreadTimeOut(true);
+			this.executor = pool;
+			this.permits = null;
+			this.virtual = false;
+		}
+	}
+
+	/**
+	 * @return the executor for requests to fernsehserien.de
+	 */
+	static synchronized ScraperExecutor site() {
+		if (site == null) {
+			site = new ScraperExecutor("site", FernsehserienMetadataProvider.getConfigValueAsInt("siteThreads", 8), getMode());
+			installShutdownHook();
+		}
+		return site;
+	}
+
+	/**
+	 * @return the executor for searches and metadata requests at the other providers (tvdb, tmdb, imdb)
+	 */
+	static synchronized ScraperExecutor providers() {
+		if (providers == null) {
+			providers = new ScraperExecutor("providers", FernsehserienMetadataProvider.getConfigValueAsInt("providerThreads", 4), getMode());
+			installShutdownHook();
+		}
+		return providers;
+	}
+
+	/**
+	 * shut down both executors; they are created again when they are needed the next time
+	 */
+	static void shutdownAll() {
+		ScraperExecutor oldSite;
+		ScraperExecutor oldProviders;
+		synchronized (ScraperExecutor.class) {
+			oldSite = site;
+			oldProviders = providers;
+			site = null;
+			providers = null;
+		}
+		if (oldSite != null) {
+			oldSite.shutdown();
+		}
+		if (oldProviders != null) {
+			oldProviders.shutdown();
+		}
+	}
+
+	/**
+	 * @return the executors that were created and not shut down yet; nothing is created
+	 */
+	static synchronized List<ScraperExecutor> getRunning() {
+		List<ScraperExecutor> running = new ArrayList<>();
+		if (site != null) {
+			running.add(site);
+		}
+		if (providers != null) {
+			running.add(providers);
+		}
+		return running;
+	}
+
+	private static String getMode() {
+		String mode = FernsehserienMetadataProvider.providerInfo.getConfig().getValue("executorMode");
+		return MODE_VIRTUAL.equals(mode) ? MODE_VIRTUAL : MODE_THREADS;
+	}
+
+	private static void installShutdownHook() {
+		if (shutdownHookInstalled) {
+			return;
+		}
+		shutdownHookInstalled = true;
+		Runtime.getRuntime().addShutdownHook(new Thread("fernsehserien-shutdown") {
+			@Override
+			public void run() {
+				shutdownAll();
+			}
+		});
+	}
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() is only there since Java 21
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * run a task in the background
+	 *
+	 * @param task the task
+	 * @return the future of the task
+	 */
+	<T> Future<T> submit(Callable<T> task) {
+		InstrumentedTask<T> future = new InstrumentedTask<>(task);
+		queued.incrementAndGet();
+		submitted.incrementAndGet();
+		try {
+			executor.execute(future);
+		}
+		catch (RejectedExecutionException e) {
+			future.cancel(false);
+			throw e;
+		}
+		return future;
+	}
+
+	void shutdown() {
+		LOGGER.debug("shutting down " + this);
+		executor.shutdownNow();
+	}
+
+	boolean isShutdown() {
+		return executor.isShutdown();
+	}
+
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the maximum number of tasks running at once
+	 */
+	int getSize() {
+		return size;
+	}
+
+	boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * @return the number of tasks waiting for a thread (or permit)
+	 */
+	int getQueueDepth() {
+		return queued.get();
+	}
+
+	/**
+	 * @return the number of tasks running right now
+	 */
+	int getActiveCount() {
+		return active.get();
+	}
+
+	long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	long getCompletedCount() {
+		return completed.get();
+	}
+
+	/**
+	 * @return the average time in ms tasks waited before they started
+	 */
+	double getAverageWaitMillis() {
+		long started = submitted.get() - queued.get();
+		return started <= 0 ? 0 : totalWaitNanos.get() / 1000000d / started;
+	}
+
+	/**
+	 * @return the longest time in ms a task waited before it started
+	 */
+	double getMaxWaitMillis() {
+		return maxWaitNanos.get() / 1000000d;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ScraperExecutor[%s, %s %d, queued=%d, active=%d, completed=%d, avgWait=%.1fms, maxWait=%.1fms]", name,
+				virtual ? "virtual threads, max" : "threads", size, getQueueDepth(), getActiveCount(), getCompletedCount(), getAverageWaitMillis(),
+				getMaxWaitMillis());
+	}
+
+	/**
+	 * A task that keeps track of the time it waited in the queue and of how many tasks are queued and running
+	 */
+	private class InstrumentedTask<T> extends FutureTask<T> {
+		private final long enqueued = System.nanoTime();
+		private final AtomicBoolean started = new AtomicBoolean();
+
+		InstrumentedTask(final Callable<T> task) {
+			super(task);
+		}
+
+		@Override
+		public void run() {
+			if (!started.compareAndSet(false, true)) {
+				return;
+			}
+			boolean acquired = false;
+			try {
+				if (permits != null) {
+					permits.acquire();
+					acquired = true;
+				}
+				long waited = System.nanoTime() - enqueued;
+				queued.decrementAndGet();
+				active.incrementAndGet();
+				totalWaitNanos.addAndGet(waited);
+				long max;
+				while (waited > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waited)) {
+					// retry
+				}
+				try {
+					super.run();
+				}
+				finally {
+					active.decrementAndGet();
+					completed.incrementAndGet();
+				}
+			}
+			catch (InterruptedException e) {
+				queued.decrementAndGet();
+				cancel(false);
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				if (acquired) {
+					permits.release();
+				}
+			}
+		}
+
+		@Override
+		protected void done() {
+			// cancelled before it was started: it won't leave the queue through run()
+			if (started.compareAndSet(false, true)) {
+				queued.decrementAndGet();
+			}
+		}
+	}
+}
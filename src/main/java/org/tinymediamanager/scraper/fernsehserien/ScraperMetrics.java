@@ -0,0 +1,335 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.MalformedJsonException;
+
+/**
+ * The class ScraperMetrics collects where the time of a scrape goes: a timer per stage (fetching, parsing, the searches at the other
+ * providers, ...) and per provider and operation, and counters of the errors by cause. A snapshot adds the counters of the http client and
+ * the rate limiter and the gauges of the thread pools.
+ *
+ * The snapshot is available in code and via JMX as the MBean org.tinymediamanager.scraper.fernsehserien:type=ScraperMetrics, one
+ * attribute per value.
+ */
+class ScraperMetrics implements DynamicMBean {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ScraperMetrics.class);
+	private static final ScraperMetrics INSTANCE = new ScraperMetrics();
+	private static final String OBJECT_NAME = "org.tinymediamanager.scraper.fernsehserien:type=ScraperMetrics";
+
+	// the operations of the provider
+	static final String SEARCH = "search";
+	static final String SHOW = "show";
+	static final String EPISODE = "episode";
+	static final String EPISODE_LIST = "episodeList";
+
+	// the stages of a scrape; a fetch lasts from asking for the page (including the wait for the rate limiter) until the response is closed
+	static final String FETCH = "fetch";
+	static final String PARSE_FAST_SEARCH = "parseFastSearch";
+	static final String PARSE_SEARCH_PAGE = "parseSearchPage";
+	static final String PARSE_SHOW_PAGE = "parseShowPage";
+	static final String PARSE_INFO_PAGE = "parseInfoPage";
+	static final String PARSE_EPISODE_GUIDE = "parseEpisodeGuide";
+	static final String PARSE_EPISODE_PAGE = "parseEpisodePage";
+	static final String EXTRACT_EPISODE = "extractEpisode";
+	static final String OTHER_PROVIDERS = "addOtherProvider";
+	static final String GENRES = "addGenres";
+
+	private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+	static ScraperMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * A timer: how often something was done, how long it took in total and at most
+	 */
+	static class Timer {
+		private final AtomicLong count = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		/**
+		 * @param start the System.nanoTime() when it was started
+		 */
+		void record(long start) {
+			long elapsed = System.nanoTime() - start;
+			count.incrementAndGet();
+			totalNanos.addAndGet(elapsed);
+			long max = maxNanos.get();
+			while (elapsed > max && !maxNanos.compareAndSet(max, elapsed)) {
+				max = maxNanos.get();
+			}
+		}
+
+		long getCount() {
+			return count.get();
+		}
+
+		double getAverageMillis() {
+			long n = count.get();
+			return n == 0 ? 0 : totalNanos.get() / 1e6 / n;
+		}
+
+		double getMaxMillis() {
+			return maxNanos.get() / 1e6;
+		}
+
+		long getTotalMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(totalNanos.get());
+		}
+	}
+
+	/**
+	 * @param name e.g. stage.parseInfoPage
+	 * @return the timer; it's created on first use
+	 */
+	Timer timer(String name) {
+		Timer timer = timers.get(name);
+		if (timer == null) {
+			Timer created = new Timer();
+			timer = timers.putIfAbsent(name, created);
+			if (timer == null) {
+				timer = created;
+			}
+		}
+		return timer;
+	}
+
+	/**
+	 * @param stage e.g. PARSE_INFO_PAGE
+	 * @param start the System.nanoTime() when the stage started
+	 */
+	void recordStage(String stage, long start) {
+		timer("stage." + stage).record(start);
+	}
+
+	/**
+	 * @param operation e.g. SEARCH
+	 * @param start the System.nanoTime() when the operation started
+	 */
+	void recordOperation(String operation, long start) {
+		timer("operation." + operation).record(start);
+	}
+
+	/**
+	 * @param providerId the other provider, e.g. tvdb
+	 * @param operation e.g. search
+	 * @param start the System.nanoTime() when the call started
+	 */
+	void recordProvider(String providerId, String operation, long start) {
+		timer("provider." + providerId + "." + operation).record(start);
+	}
+
+	/**
+	 * count an error
+	 *
+	 * @param where e.g. fetch or provider.tvdb
+	 * @param e the error
+	 */
+	void recordError(String where, Throwable e) {
+		increment("errors." + where + "." + getCause(e));
+	}
+
+	void increment(String counter) {
+		AtomicLong value = counters.get(counter);
+		if (value == null) {
+			AtomicLong created = new AtomicLong();
+			value = counters.putIfAbsent(counter, created);
+			if (value == null) {
+				value = created;
+			}
+		}
+		value.incrementAndGet();
+	}
+
+	/*
+	 * the kind of an error, e.g. timeout or http503
+	 */
+	static String getCause(Throwable e) {
+		if (e instanceof SocketTimeoutException) {
+			return "timeout";
+		}
+		if (e instanceof TimeoutException) {
+			return "deadline";
+		}
+		if (e instanceof SocketException) {
+			return "connection";
+		}
+		if (e instanceof MalformedJsonException || e instanceof IllegalStateException) {
+			return "parse";
+		}
+		if (e instanceof ProviderRegistry.NotInstalledException) {
+			return "notInstalled";
+		}
+		if (e instanceof IOException && e.getMessage() != null && e.getMessage().startsWith("HTTP ")) {
+			// e.g. HTTP 404 for ...
+			String[] parts = e.getMessage().split(" ");
+			return "http" + parts[1];
+		}
+		return e.getClass().getSimpleName();
+	}
+
+	/**
+	 * @return all values by name, sorted
+	 */
+	Map<String, Number> snapshot() {
+		Map<String, Number> values = new TreeMap<>();
+		for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+			Timer timer = entry.getValue();
+			values.put(entry.getKey() + ".count", timer.getCount());
+			values.put(entry.getKey() + ".totalMillis", timer.getTotalMillis());
+			values.put(entry.getKey() + ".avgMillis", timer.getAverageMillis());
+			values.put(entry.getKey() + ".maxMillis", timer.getMaxMillis());
+		}
+		for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().get());
+		}
+
+		FernsehserienHttpClient client = FernsehserienHttpClient.getInstance();
+		values.put("http.requests", client.getRequests());
+		values.put("http.notModified", client.getNotModified());
+		values.put("http.collapsed", client.getCollapsed());
+		values.put("http.recentHits", client.getRecentHits() + FernsehserienTvShowParser.FAST_SEARCHES.getHits());
+		values.put("http.bytesDownloaded", client.getBytesDownloaded());
+		values.put("http.bytesAvoided", client.getBytesAvoided());
+		values.put("http.parsesAvoided", client.getParsesAvoided());
+		HostRateLimiter limiter = client.getLimiter();
+		values.put("limiter.throttled", limiter.getThrottled());
+		values.put("limiter.waits", limiter.getWaits());
+		values.put("limiter.waitedMillis", limiter.getWaitedMillis());
+
+		for (ScraperExecutor executor : ScraperExecutor.getRunning()) {
+			String prefix = "executor." + executor.getName() + ".";
+			values.put(prefix + "size", executor.getSize());
+			values.put(prefix + "queued", executor.getQueueDepth());
+			values.put(prefix + "active", executor.getActiveCount());
+			values.put(prefix + "completed", executor.getCompletedCount());
+			values.put(prefix + "avgWaitMillis", executor.getAverageWaitMillis());
+			values.put(prefix + "maxWaitMillis", executor.getMaxWaitMillis());
+		}
+		values.put("guideCache.size", FernsehserienTvShowParser.GUIDE_CACHE.size());
+		return values;
+	}
+
+	/**
+	 * make the metrics available via JMX; does nothing if they are already
+	 */
+	static void register() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(INSTANCE, name);
+			}
+		}
+		catch (Exception e) {
+			// e.g. registered by another thread in the meantime, or not allowed
+			LOGGER.debug("could not register the metrics: " + e);
+		}
+	}
+
+	static void unregister() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		}
+		catch (Exception e) {
+			LOGGER.debug("could not unregister the metrics: " + e);
+		}
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Number value = snapshot().get(attribute);
+		if (value == null) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		return value;
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Number> values = snapshot();
+		AttributeList list = new AttributeList();
+		for (String attribute : attributes) {
+			if (values.containsKey(attribute)) {
+				list.add(new Attribute(attribute, values.get(attribute)));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(attribute.getName() + " is read only");
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	/*
+	 * the attributes are the values we have right now; new timers show up when a JMX client asks again
+	 */
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		List<MBeanAttributeInfo> attributes = new ArrayList<>();
+		for (Map.Entry<String, Number> entry : snapshot().entrySet()) {
+			attributes.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(), true, false, false));
+		}
+		return new MBeanInfo(getClass().getName(), "metrics of the fernsehserien scraper", attributes.toArray(new MBeanAttributeInfo[0]), null,
+				new MBeanOperationInfo[0], null);
+	}
+}
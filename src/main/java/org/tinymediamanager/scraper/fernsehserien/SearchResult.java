@@ -15,11 +15,19 @@
  */
 package org.tinymediamanager.scraper.fernsehserien;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
 /**
- * A single search result
+ * A single search result of the fast search. The results are read straight from the response; the location ("USA 1999–2006") is split
+ * into countries and year when reading.
  */
 public class SearchResult {
 	public enum Types
@@ -34,13 +42,98 @@ public class SearchResult {
 	private String s;
 	private String b;
 	private String c;
+	private List<String> countries = Collections.emptyList();
+	private int year;
 
 	public SearchResult()
 	{
 	}
 
+	/**
+	 * read the results of the fast search
+	 *
+	 * @param reader the response
+	 * @param limit the number of results to read at most; the rest of the response isn't read
+	 * @return the results
+	 * @throws IOException if the response isn't a JSON array of results
+	 */
+	static List<SearchResult> read(Reader reader, int limit) throws IOException
+	{
+		List<SearchResult> results = new ArrayList<>();
+		JsonReader json = new JsonReader(reader);
+		json.beginArray();
+		while (results.size() < limit && json.hasNext()) {
+			results.add(readResult(json));
+		}
+		return results;
+	}
+
+	private static SearchResult readResult(JsonReader json) throws IOException
+	{
+		SearchResult result = new SearchResult();
+		json.beginObject();
+		while (json.hasNext()) {
+			String name = json.nextName();
+			if (json.peek() == JsonToken.NULL) {
+				json.nextNull();
+				continue;
+			}
+			switch (name) {
+				case "a":
+					result.a = json.nextString();
+					break;
+				case "t":
+					result.t = json.nextString();
+					break;
+				case "l":
+					result.setLocation(json.nextString());
+					break;
+				case "s":
+					result.s = json.nextString();
+					break;
+				case "b":
+					result.b = json.nextString();
+					break;
+				case "c":
+					result.c = json.nextString();
+					break;
+				default:
+					json.skipValue();
+			}
+		}
+		json.endObject();
+		return result;
+	}
+
+	/*
+	 * e.g. "USA 1999–2006" or "D/A 2010"; a missing year is 0
+	 */
+	private void setLocation(String location)
+	{
+		l = location;
+		int space = location.indexOf(' ');
+		String countryPart = space < 0 ? location : location.substring(0, space);
+		if (!countryPart.isEmpty()) {
+			countries = Arrays.asList(countryPart.split("/"));
+		}
+		// the first number after the countries ("seit 1970")
+		year = 0;
+		if (space >= 0) {
+			int i = space + 1;
+			while (i < location.length() && !Character.isDigit(location.charAt(i))) {
+				i++;
+			}
+			for (; i < location.length() && year < 10000 && Character.isDigit(location.charAt(i)); i++) {
+				year = year * 10 + Character.digit(location.charAt(i), 10);
+			}
+		}
+	}
+
 	public Types getType()
 	{
+		if (a == null) {
+			return Types.Unknown;
+		}
 		switch (a)
 		{
 			case "s":
@@ -56,23 +149,12 @@ public class SearchResult {
 
 	public List<String> getCountries()
 	{
-		String[] parts = l.split(" ");
-		String[] countries = parts[0].split("/");
-		return Arrays.asList(countries);
+		return countries;
 	}
 
 	public int getYear()
 	{
-		String[] parts = l.split(" ");
-		if (parts.length < 2)
-			return 0;
-
-		String[] years = parts[1].split("–");
-		if (years.length > 0) {
-			return Integer.parseInt(years[0]);
-		} else {
-			return Integer.parseInt(parts[1]);
-		}
+		return year;
 	}
 
 	public String getSeries()
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tinymediamanager.scraper.MediaSearchResult;
+
+/**
+ * The class SearchResultEnricher scrapes the full metadata of lazy search results concurrently on the given executor, so the number of
+ * show pages loaded at the same time is limited by its size; the order of the results is not changed and a result that fails or times out only gets its status set.
+ */
+class SearchResultEnricher {
+	private static final Logger LOGGER = LoggerFactory.getLogger(SearchResultEnricher.class);
+
+	private final ScraperExecutor executor;
+	private final long timeoutMillis;
+
+	SearchResultEnricher(ScraperExecutor executor, long timeoutMillis) {
+		this.executor = executor;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * scrape the metadata of all lazy results in the list
+	 *
+	 * @param results the search results
+	 */
+	void enrich(List<MediaSearchResult> results) {
+		List<LazyMediaSearchResult> pending = new ArrayList<>();
+		for (MediaSearchResult result : results) {
+			if (result instanceof LazyMediaSearchResult && !((LazyMediaSearchResult) result).isLoaded()) {
+				pending.add((LazyMediaSearchResult) result);
+			}
+		}
+		if (pending.isEmpty()) {
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		List<Future<?>> futures = new ArrayList<>(pending.size());
+		try {
+			for (LazyMediaSearchResult result : pending) {
+				futures.add(executor.submit(new LoadWorker(result)));
+			}
+
+			// all results share one time budget, so the whole enrichment is bounded by the slowest pages
+			long deadline = start + timeoutMillis;
+			for (int i = 0; i < futures.size(); i++) {
+				Future<?> future = futures.get(i);
+				LazyMediaSearchResult result = pending.get(i);
+				try {
+					future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				}
+				catch (TimeoutException e) {
+					future.cancel(true);
+					result.setTimedOut(e);
+				}
+				catch (ExecutionException e) {
+					LOGGER.debug("could not enrich " + result.getId() + ": " + e.getCause());
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					result.setTimedOut(e);
+				}
+			}
+		}
+		finally {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+		LOGGER.debug("enriched " + pending.size() + " search results in " + (System.currentTimeMillis() - start) + "ms; " + executor);
+	}
+
+	private static class LoadWorker implements Callable<Void> {
+		private final LazyMediaSearchResult result;
+
+		LoadWorker(LazyMediaSearchResult result) {
+			this.result = result;
+		}
+
+		@Override
+		public Void call() throws Exception {
+			result.load();
+			return null;
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The class SingleFlight runs a piece of work only once at a time per key: whoever asks for the same key while the work is running waits
+ * for its result instead of doing the same work again. Nothing is kept once the work is done - that's what the caches are for.
+ */
+class SingleFlight<V> {
+	private final ConcurrentMap<String, FutureTask<V>> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong executed = new AtomicLong();
+	private final AtomicLong collapsed = new AtomicLong();
+
+	/**
+	 * do the work or wait for the same work that is already running
+	 *
+	 * @param key what identifies the work
+	 * @param work the work
+	 * @param context the scrape; we don't wait longer than its deadline
+	 * @return the result of the work
+	 * @throws Exception what the work threw
+	 */
+	V execute(String key, Callable<V> work, ScrapeContext context) throws Exception {
+		FutureTask<V> task = new FutureTask<>(work);
+		FutureTask<V> running = inFlight.putIfAbsent(key, task);
+		if (running == null) {
+			executed.incrementAndGet();
+			try {
+				task.run();
+			}
+			finally {
+				inFlight.remove(key, task);
+			}
+			return getResult(task);
+		}
+
+		collapsed.incrementAndGet();
+		try {
+			return getResult(running, context.remainingMillis());
+		}
+		catch (TimeoutException e) {
+			if (running.isDone()) {
+				// the one who did the work ran out of time, we might not
+				return work.call();
+			}
+			throw new TimeoutException("no time left waiting for " + key);
+		}
+	}
+
+	private V getResult(FutureTask<V> task) throws Exception {
+		try {
+			return task.get();
+		}
+		catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
+
+	private V getResult(FutureTask<V> task, long timeoutMillis) throws Exception {
+		try {
+			return task.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		catch (ExecutionException e) {
+			throw unwrap(e);
+		}
+	}
+
+	private static Exception unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return cause instanceof Exception ? (Exception) cause : e;
+	}
+
+	/**
+	 * @return how often the work was done
+	 */
+	long getExecuted() {
+		return executed.get();
+	}
+
+	/**
+	 * @return how often somebody waited for work that was already running instead of doing it again
+	 */
+	long getCollapsed() {
+		return collapsed.get();
+	}
+
+	@Override
+	public String toString() {
+		return "SingleFlight[executed=" + getExecuted() + ", collapsed=" + getCollapsed() + ", inFlight=" + inFlight.size() + "]";
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tinymediamanager.scraper.entities.MediaEpisode;
+
+/**
+ * The class StoredEpisodeGuide is the form in which a complete episode guide is kept in the MetadataStore: one row per episode, in the
+ * order of the guide.
+ */
+class StoredEpisodeGuide {
+	List<Row> rows = new ArrayList<>();
+	PageValidators validators;
+
+	static class Row {
+		int season;
+		int episode;
+		String id;
+		String title;
+		String firstAired;
+	}
+
+	static StoredEpisodeGuide from(EpisodeGuide guide, PageValidators validators) {
+		StoredEpisodeGuide stored = new StoredEpisodeGuide();
+		stored.validators = validators;
+		for (MediaEpisode me : guide.getEpisodes()) {
+			Row row = new Row();
+			row.season = me.season;
+			row.episode = me.episode;
+			row.id = me.ids.get(FernsehserienMetadataProvider.providerInfo.getId()).toString();
+			row.title = me.title;
+			row.firstAired = me.firstAired;
+			stored.rows.add(row);
+		}
+		return stored;
+	}
+
+	EpisodeGuide toEpisodeGuide() {
+		EpisodeGuide.Builder builder = new EpisodeGuide.Builder();
+		for (Row row : rows) {
+			builder.add(row.season, row.episode, row.id, row.title, row.firstAired);
+		}
+		return builder.build();
+	}
+}
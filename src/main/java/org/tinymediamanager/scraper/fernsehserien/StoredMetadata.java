@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.entities.MediaArtwork;
+import org.tinymediamanager.scraper.entities.MediaCastMember;
+import org.tinymediamanager.scraper.entities.MediaGenres;
+
+/**
+ * The class StoredMetadata is the form in which the metadata of a show or an episode is kept in the MetadataStore. It only holds what
+ * this scraper fills in; ids that aren't strings (e.g. the search result of the genre provider) are left out.
+ */
+class StoredMetadata {
+	String title;
+	String originalTitle;
+	int year;
+	Long releaseDate;
+	String plot;
+	int runtime;
+	String status;
+	int season;
+	int episode;
+	List<String> countries = new ArrayList<>();
+	List<String> genres = new ArrayList<>();
+	Map<String, String> ids = new LinkedHashMap<>();
+	List<Artwork> artwork = new ArrayList<>();
+	List<CastMember> cast = new ArrayList<>();
+	// of the page the metadata was parsed from
+	PageValidators validators;
+
+	static class Artwork {
+		String providerId;
+		String type;
+		String url;
+	}
+
+	static class CastMember {
+		String type;
+		String id;
+		String name;
+		String character;
+		String imageUrl;
+	}
+
+	static StoredMetadata from(MediaMetadata md) {
+		StoredMetadata stored = new StoredMetadata();
+		stored.title = md.getTitle();
+		stored.originalTitle = md.getOriginalTitle();
+		stored.year = md.getYear();
+		stored.releaseDate = md.getReleaseDate() == null ? null : md.getReleaseDate().getTime();
+		stored.plot = md.getPlot();
+		stored.runtime = md.getRuntime();
+		stored.status = md.getStatus();
+		stored.season = md.getSeasonNumber();
+		stored.episode = md.getEpisodeNumber();
+		stored.countries.addAll(md.getCountries());
+		for (MediaGenres genre : md.getGenres()) {
+			stored.genres.add(genre.name());
+		}
+		for (Map.Entry<String, Object> id : md.getIds().entrySet()) {
+			if (id.getValue() instanceof String || id.getValue() instanceof Number) {
+				stored.ids.put(id.getKey(), id.getValue().toString());
+			}
+		}
+		for (MediaArtwork ma : md.getMediaArt(MediaArtwork.MediaArtworkType.ALL)) {
+			Artwork artwork = new Artwork();
+			artwork.providerId = ma.getProviderId();
+			artwork.type = ma.getType().name();
+			artwork.url = ma.getDefaultUrl();
+			stored.artwork.add(artwork);
+		}
+		for (MediaCastMember member : md.getCastMembers()) {
+			CastMember castMember = new CastMember();
+			castMember.type = member.getType() == null ? null : member.getType().name();
+			castMember.id = member.getId();
+			castMember.name = member.getName();
+			castMember.character = member.getCharacter();
+			castMember.imageUrl = member.getImageUrl();
+			stored.cast.add(castMember);
+		}
+		return stored;
+	}
+
+	MediaMetadata toMediaMetadata(String providerId) {
+		MediaMetadata md = new MediaMetadata(providerId);
+		md.setTitle(title);
+		md.setOriginalTitle(originalTitle);
+		md.setYear(year);
+		if (releaseDate != null) {
+			md.setReleaseDate(new Date(releaseDate));
+		}
+		md.setPlot(plot);
+		md.setRuntime(runtime);
+		md.setStatus(status);
+		md.setSeasonNumber(season);
+		md.setEpisodeNumber(episode);
+		for (String country : countries) {
+			md.addCountry(country);
+		}
+		for (String genre : genres) {
+			MediaGenres mediaGenre = MediaGenres.getGenre(genre);
+			if (mediaGenre != null) {
+				md.addGenre(mediaGenre);
+			}
+		}
+		for (Map.Entry<String, String> id : ids.entrySet()) {
+			md.setId(id.getKey(), id.getValue());
+		}
+		for (Artwork stored : artwork) {
+			MediaArtwork ma = new MediaArtwork(stored.providerId, MediaArtwork.MediaArtworkType.valueOf(stored.type));
+			ma.setDefaultUrl(stored.url);
+			md.addMediaArt(ma);
+		}
+		for (CastMember stored : cast) {
+			MediaCastMember member = new MediaCastMember();
+			if (stored.type != null) {
+				member.setType(MediaCastMember.CastType.valueOf(stored.type));
+			}
+			member.setId(stored.id);
+			member.setName(stored.name);
+			member.setCharacter(stored.character);
+			member.setImageUrl(stored.imageUrl);
+			md.addCastMember(member);
+		}
+		return md;
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.tinymediamanager.scraper.entities.MediaEpisode;
+
+public class EpisodeGuideTest {
+	private static Document largeGuideDocument;
+	private static EpisodeGuide largeGuide;
+
+	@BeforeClass
+	public static void parseLargeGuide() throws Exception {
+		// 12 seasons with 250 episodes each plus 20 specials
+		try (InputStream is = openLargeGuide()) {
+			largeGuideDocument = Jsoup.parse(is, "UTF-8", "");
+		}
+		EpisodeGuide.Builder builder = new EpisodeGuide.Builder();
+		try (Reader reader = new InputStreamReader(openLargeGuide(), "UTF-8")) {
+			new EpisodeGuideStreamParser(reader).parse(builder);
+		}
+		largeGuide = builder.build();
+	}
+
+	private static InputStream openLargeGuide() throws IOException {
+		return new GZIPInputStream(EpisodeGuideTest.class.getResourceAsStream("/fixtures/episodenguide-large.html.gz"));
+	}
+
+	@Test
+	public void testStreamingMatchesDom() {
+		// extract the rows like the jsoup based parser did
+		Elements rows = largeGuideDocument.getElementsByAttributeValue("itemprop", "episode");
+		List<MediaEpisode> episodes = largeGuide.getEpisodes();
+		assertEquals(rows.size(), episodes.size());
+		for (int i = 0; i < rows.size(); i++) {
+			Element row = rows.get(i);
+			Elements numbers = row.getElementsByClass("episodenliste-episodennummer");
+			MediaEpisode me = episodes.get(i);
+			assertEquals(numbers.get(0).attributes().get("data-href"), me.ids.get("fernsehserien"));
+			assertEquals(row.getElementsByClass("episodenliste-titel").first().getElementsByAttributeValue("itemprop", "name").text(), me.title);
+			assertEquals(row.getElementsByClass("episodenliste-ea").first().text(), me.firstAired);
+		}
+	}
+
+	@Test
+	public void testStreamingEdgeCases() throws Exception {
+		String html = "<html><head><script>var row = '<tr itemprop=\"episode\"><td>';</script></head><body><table>"
+				+ "<!-- <tr itemprop=\"episode\"> -->"
+				+ "<tr itemprop=episode><td class='x episodenliste-episodennummer' data-href='serie/folgen/1x01-a&amp;b'>1</td>"
+				+ "<td class=\"episodenliste-episodennummer\">\n 1.\n</td><td class=\"episodenliste-episodennummer\">01</td>"
+				+ "<td class=\"episodenliste-titel\"><a><span itemprop=\"name\">Tom &amp;\n  Jerry</span></a><br/><span itemprop=\"name\">Teil 1</span></td>"
+				+ "<td class=\"episodenliste-ea\"><ea-angabe>01.02.2003</ea-angabe></td></tr>"
+				// unclosed row and cells, like browsers accept them
+				+ "<TR ITEMPROP=\"episode\"><TD CLASS=\"episodenliste-episodennummer\" data-href=\"serie/folgen/special\">7"
+				+ "<td class=\"episodenliste-episodennummer\"><td class=\"episodenliste-episodennummer\">"
+				+ "<td class=\"episodenliste-titel\"><span itemprop=\"name\">Special</span><td class=\"episodenliste-ea\">"
+				+ "<tr itemprop=\"episode\"><td class=\"episodenliste-episodennummer\">broken</td></tr>"
+				+ "</table></body></html>";
+
+		EpisodeGuide.Builder builder = new EpisodeGuide.Builder();
+		new EpisodeGuideStreamParser(new StringReader(html)).parse(builder);
+		EpisodeGuide guide = builder.build();
+
+		assertEquals(2, guide.size());
+		MediaEpisode me = guide.getEpisode(1, 1);
+		assertEquals("serie/folgen/1x01-a&b", me.ids.get("fernsehserien"));
+		assertEquals("Tom & Jerry Teil 1", me.title);
+		assertEquals("01.02.2003", me.firstAired);
+
+		me = guide.getEpisode(0, 7);
+		assertEquals("serie/folgen/special", me.ids.get("fernsehserien"));
+		assertEquals("Special", me.title);
+		assertEquals("", me.firstAired);
+	}
+
+	@Test
+	public void testEarlyExit() throws Exception {
+		EpisodeGuide.Builder builder = new EpisodeGuide.Builder();
+		try (Reader reader = new InputStreamReader(openLargeGuide(), "UTF-8")) {
+			assertFalse(new EpisodeGuideStreamParser(reader).parse(builder, 2, 10, 0));
+		}
+		EpisodeGuide guide = builder.build(false);
+		assertFalse(guide.isComplete());
+		assertEquals(260, guide.size());
+		assertEquals("Folge 260", guide.getEpisode(2, 10).title);
+
+		// read on until at least 1000 rows are there
+		builder = new EpisodeGuide.Builder();
+		try (Reader reader = new InputStreamReader(openLargeGuide(), "UTF-8")) {
+			assertFalse(new EpisodeGuideStreamParser(reader).parse(builder, 5, 1, 1000));
+		}
+		assertEquals(1001, builder.size());
+
+		// the episode comes before minRows: still stop as soon as there are enough rows
+		builder = new EpisodeGuide.Builder();
+		try (Reader reader = new InputStreamReader(openLargeGuide(), "UTF-8")) {
+			assertFalse(new EpisodeGuideStreamParser(reader).parse(builder, 1, 6, 10));
+		}
+		guide = builder.build(false);
+		assertFalse(guide.isComplete());
+		assertEquals(10, guide.size());
+		assertNotNull(guide.getEpisode(1, 6));
+
+		// the episode isn't there: read everything
+		builder = new EpisodeGuide.Builder();
+		try (Reader reader = new InputStreamReader(openLargeGuide(), "UTF-8")) {
+			assertTrue(new EpisodeGuideStreamParser(reader).parse(builder, 20, 1, 0));
+		}
+		assertEquals(3020, builder.size());
+	}
+
+	@Test
+	public void testEarlyExitFindsTheSameEpisode() throws Exception {
+		// what findEpisode used to do: parse the whole page
+		Element row;
+		try (InputStream is = openLargeGuide()) {
+			row = findInDocument(Jsoup.parse(is, "UTF-8", ""), 1, 5);
+		}
+		EpisodeGuide.Builder builder = new EpisodeGuide.Builder();
+		try (Reader reader = new InputStreamReader(openLargeGuide(), "UTF-8")) {
+			new EpisodeGuideStreamParser(reader).parse(builder, 1, 5, 0);
+		}
+		EpisodeGuide guide = builder.build(false);
+		assertEquals(5, guide.size());
+		assertEquals(row.getElementsByClass("episodenliste-episodennummer").get(0).attributes().get("data-href"),
+				guide.getEpisode(1, 5).ids.get("fernsehserien"));
+	}
+
+	@Test
+	public void testLargeGuide() {
+		assertEquals("Episodes count", 3020, largeGuide.size());
+
+		List<MediaEpisode> episodes = largeGuide.getEpisodes();
+		for (int i = 0; i < episodes.size(); i++) {
+			MediaEpisode me = episodes.get(i);
+			assertEquals(i, largeGuide.indexOf(me.season, me.episode));
+		}
+
+		MediaEpisode me = largeGuide.getEpisode(7, 123);
+		assertNotNull(me);
+		assertEquals("Folge 1623", me.title);
+		assertEquals("die-lange-soap/folgen/7x123-folge-1623-101623", me.ids.get("fernsehserien"));
+
+		me = largeGuide.getEpisode(0, 3);
+		assertNotNull(me);
+		assertEquals("Special & Extra 3", me.title);
+		assertEquals("24.12.1998", me.firstAired);
+
+		// a special without a number
+		assertEquals("Special & Extra 20", largeGuide.getEpisode(0, 0).title);
+		assertNull(largeGuide.getEpisode(13, 1));
+		assertNull(largeGuide.getEpisode(1, 251));
+		assertEquals(-1, largeGuide.indexOf(-1, -1));
+	}
+
+	@Test
+	public void testFirstRowWins() {
+		EpisodeGuide guide = new EpisodeGuide.Builder().add(1, 1, "a", "first", "").add(1, 2, "b", "second", "").add(1, 1, "c", "again", "")
+				.build();
+		assertEquals(3, guide.size());
+		assertEquals("first", guide.getEpisode(1, 1).title);
+		assertEquals(1, guide.indexOf(1, 2));
+	}
+
+	@Test
+	public void testEmptyGuide() {
+		EpisodeGuide guide = new EpisodeGuide.Builder().build();
+		assertEquals(0, guide.size());
+		assertNull(guide.getEpisode(1, 1));
+		assertThat(guide.getEpisodes()).isEmpty();
+	}
+
+	@Test
+	public void testLookupMatchesDom() {
+		// the index finds the same rows as walking the rows did
+		List<MediaEpisode> episodes = largeGuide.getEpisodes();
+		for (int i = 0; i < 50; i++) {
+			int season = 1 + (i * 7) % 12;
+			int episode = 1 + (i * 31) % 250;
+			Element row = findInDocument(largeGuideDocument, season, episode);
+			assertNotNull(row);
+			int index = largeGuide.indexOf(season, episode);
+			assertEquals(row.getElementsByClass("episodenliste-episodennummer").get(0).attributes().get("data-href"),
+					episodes.get(index).ids.get("fernsehserien"));
+		}
+	}
+
+	/*
+	 * the lookup as findEpisode did it before the guide was indexed: walk the rows until the episode shows up. ParserBenchmark compares
+	 * the speed of both
+	 */
+	private static Element findInDocument(Document doc, int seasonNr, int episodeNr) {
+		for (Element episode : doc.getElementsByAttributeValue("itemprop", "episode")) {
+			Elements numbers = episode.getElementsByClass("episodenliste-episodennummer");
+			String seasonStr = numbers.get(1).text();
+			int season = 0;
+			int episodeNo = 0;
+			if (StringUtils.isNotBlank(seasonStr)) {
+				season = Integer.parseInt(seasonStr.substring(0, seasonStr.length() - 1));
+				episodeNo = Integer.parseInt(numbers.get(2).text());
+			}
+			else if (StringUtils.isNotBlank(numbers.get(0).text())) {
+				episodeNo = Integer.parseInt(numbers.get(0).text());
+			}
+			if (season == seasonNr && episodeNo == episodeNr) {
+				return episode;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.junit.Assert.*;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Test;
+import org.tinymediamanager.scraper.fernsehserien.ExtractionRule.Field;
+
+public class ExtractionRuleTest {
+	private static final String PAGE = "<div class='serie-header'><div class='infos'><h1>Malcolm mittendrin</h1></div></div>"
+			+ "<div class='infos'><h1>not this one</h1></div>"
+			+ "<div class='serie-produktionsjahre'><abbr>USA</abbr> / 2000–2006 (Malcolm in the Middle)</div>"
+			+ "<div class='suchergebnis-wannwo'>seit 2000 <span>7 Staffeln</span></div>"
+			+ "<div id='serie-info'><p>Malcolm ist hochbegabt.</p></div>";
+
+	@Test
+	public void testRulesOfTheSite() {
+		Document doc = Jsoup.parse(PAGE);
+		FernsehserienSiteDefinition site = FernsehserienSiteDefinition.FERNSEHSERIEN_COM;
+		assertEquals("Malcolm mittendrin", site.getRule(Field.SHOW_TITLE).text(doc));
+		assertEquals("Malcolm ist hochbegabt.", site.getRule(Field.SHOW_PLOT).text(doc));
+		assertEquals("2000", site.getRule(Field.SEARCH_YEAR).text(doc));
+
+		Element production = site.getRule(Field.SHOW_PRODUCTION).first(doc);
+		assertEquals("USA", site.getRule(Field.SHOW_COUNTRY).text(production));
+		assertEquals("2006", site.getRule(Field.SHOW_YEARS).find(production.text()).group(2));
+		assertEquals("Malcolm in the Middle", site.getRule(Field.SHOW_ORIGINAL_TITLE).group(production.text()));
+		assertEquals("09", site.getRule(Field.DATE).find("Mo 24.09.2001").group(2));
+		assertNull(site.getRule(Field.DATE).find("24.9.2001"));
+		assertNull(site.getRule(Field.EPISODE_RUNTIME).text(doc));
+
+		// only tried on hand-written pages so far
+		assertTrue(site.getRule(Field.SHOW_TITLE).isVerified());
+		assertFalse(site.getRule(Field.SHOW_GENRE).isVerified());
+	}
+
+	@Test
+	public void testSelectors() {
+		Document doc = Jsoup.parse("<ul id='list'><li class='a b' data-x='1'><span>1</span></li><li class='a'><span>2</span></li></ul>");
+		assertEquals(2, ExtractionRule.select(Field.CAST_ROW, "li.a").all(doc).size());
+		assertEquals("1", ExtractionRule.select(Field.CAST_ROW, "#list li.a.b span").text(doc));
+		assertEquals("1", ExtractionRule.select(Field.CAST_ROW, "ul [data-x]").text(doc));
+		assertEquals("2", ExtractionRule.select(Field.CAST_ROW, "li span", "([2-9])").all(doc).last().text());
+		assertNull(ExtractionRule.select(Field.CAST_ROW, "ol li").first(doc));
+		assertEquals("2", ExtractionRule.select(Field.CAST_ROW, "li span", "([2-9])").unverified().all(doc).last().text());
+	}
+
+	@Test
+	public void testBrokenRulesAreRejected() {
+		String[][] broken = { { "li > span", null }, { "li:first-child", null }, { ".a", "(unclosed" }, { null, null } };
+		for (String[] rule : broken) {
+			try {
+				if (rule[0] == null) {
+					ExtractionRule.match(Field.DATE, rule[1]);
+				}
+				else {
+					ExtractionRule.select(Field.CAST_ROW, rule[0], rule[1]);
+				}
+				fail("expected " + rule[0] + " / " + rule[1] + " to be rejected");
+			}
+			catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class FernsehserienHttpClientTest {
+	private static final byte[] PAGE = "<html><body>Malcolm mittendrin</body></html>".getBytes(StandardCharsets.UTF_8);
+
+	private final AtomicInteger busy = new AtomicInteger();
+	private final AtomicInteger slow = new AtomicInteger();
+	private HttpServer server;
+	private String url;
+
+	@Before
+	public void setUp() throws Exception {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					exchange.sendResponseHeaders(304, -1);
+				}
+				else {
+					exchange.sendResponseHeaders(200, PAGE.length);
+					try (OutputStream os = exchange.getResponseBody()) {
+						os.write(PAGE);
+					}
+				}
+				exchange.close();
+			}
+		});
+		server.createContext("/compressed", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+				if (accepted != null && accepted.contains("gzip")) {
+					exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+					exchange.sendResponseHeaders(200, 0);
+					try (OutputStream os = new GZIPOutputStream(exchange.getResponseBody())) {
+						os.write(PAGE);
+					}
+				}
+				else {
+					exchange.sendResponseHeaders(200, PAGE.length);
+					try (OutputStream os = exchange.getResponseBody()) {
+						os.write(PAGE);
+					}
+				}
+				exchange.close();
+			}
+		});
+		server.createContext("/busy", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				// the first two requests are turned away
+				if (busy.incrementAndGet() <= 2) {
+					exchange.getResponseHeaders().add("Retry-After", busy.get() == 1 ? "nonsense" : "0");
+					exchange.sendResponseHeaders(busy.get() == 1 ? 429 : 503, -1);
+				}
+				else {
+					exchange.sendResponseHeaders(200, PAGE.length);
+					try (OutputStream os = exchange.getResponseBody()) {
+						os.write(PAGE);
+					}
+				}
+				exchange.close();
+			}
+		});
+		server.createContext("/slow", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					Thread.sleep(200);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				// the first request is turned away
+				if (slow.incrementAndGet() == 1) {
+					exchange.getResponseHeaders().add("Retry-After", "0");
+					exchange.sendResponseHeaders(503, -1);
+				}
+				else {
+					exchange.sendResponseHeaders(200, PAGE.length);
+					try (OutputStream os = exchange.getResponseBody()) {
+						os.write(PAGE);
+					}
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testUnchangedPageIsNotDownloadedAgain() throws Exception {
+		FernsehserienHttpClient client = new FernsehserienHttpClient(new HostRateLimiter(100, 0, 10));
+		PageValidators validators;
+		try (FernsehserienHttpClient.Response response = client.get(url + "malcolm-mittendrin", "de-DE", null, new ScrapeContext(10000))) {
+			assertFalse(response.isNotModified());
+			assertArrayEquals(PAGE, IOUtils.toByteArray(response.getBody()));
+			validators = response.getValidators();
+		}
+		assertEquals("\"v1\"", validators.etag);
+		assertEquals(PAGE.length, validators.length);
+
+		try (FernsehserienHttpClient.Response response = client.get(url + "malcolm-mittendrin", "de-DE", validators, new ScrapeContext(10000))) {
+			assertTrue(response.isNotModified());
+			assertNull(response.getBody());
+			client.recordReuse(response.getValidators());
+		}
+
+		assertEquals(2, client.getRequests());
+		assertEquals(1, client.getNotModified());
+		assertEquals(PAGE.length, client.getBytesDownloaded());
+		assertEquals(PAGE.length, client.getBytesAvoided());
+		assertEquals(1, client.getParsesAvoided());
+	}
+
+	@Test
+	public void testCompressedPage() throws Exception {
+		FernsehserienHttpClient client = new FernsehserienHttpClient(new HostRateLimiter(100, 0, 10));
+		try (FernsehserienHttpClient.Response response = client.get(url + "compressed", "de-DE", null, new ScrapeContext(10000))) {
+			assertArrayEquals(PAGE, IOUtils.toByteArray(response.getBody()));
+		}
+		assertEquals(1, client.getRequests());
+		// the compressed size was counted
+		assertNotEquals(PAGE.length, client.getBytesDownloaded());
+	}
+
+	@Test
+	public void testSearchPageIsKeptInMemory() throws Exception {
+		FernsehserienHttpClient client = new FernsehserienHttpClient(new HostRateLimiter(100, 0, 10));
+		for (int i = 0; i < 3; i++) {
+			FernsehserienHttpClient.Page page = client.getRecentPage(url + "suche/malcolm", "de-DE", new ScrapeContext(10000));
+			assertArrayEquals(PAGE, IOUtils.toByteArray(page.getBody()));
+		}
+		// another language is another page
+		client.getRecentPage(url + "suche/malcolm", "en-US", new ScrapeContext(10000));
+		assertEquals(2, client.getRequests());
+		assertEquals(2, client.getRecentHits());
+
+		client.clearRecent();
+		client.getRecentPage(url + "suche/malcolm", "de-DE", new ScrapeContext(10000));
+		assertEquals(3, client.getRequests());
+	}
+
+	@Test
+	public void testThrottledRequestIsRetried() throws Exception {
+		HostRateLimiter limiter = new HostRateLimiter(100, 0, 10);
+		FernsehserienHttpClient client = new FernsehserienHttpClient(limiter);
+		try (FernsehserienHttpClient.Response response = client.get(url + "busy", "de-DE", null, new ScrapeContext(10000))) {
+			assertArrayEquals(PAGE, IOUtils.toByteArray(response.getBody()));
+		}
+		assertEquals(3, client.getRequests());
+		assertEquals(2, limiter.getThrottled());
+
+		// the site keeps saying no: that's an error, not an empty page
+		busy.set(-10);
+		try {
+			client.get(url + "busy", "de-DE", null, new ScrapeContext(10000)).close();
+			fail("expected an IOException");
+		}
+		catch (IOException e) {
+			assertThat(e.getMessage()).contains("HTTP 503");
+		}
+	}
+
+	@Test
+	public void testAverageIsPerResponse() throws Exception {
+		FernsehserienHttpClient client = new FernsehserienHttpClient(new HostRateLimiter(100, 0, 10));
+		try (FernsehserienHttpClient.Response response = client.get(url + "slow", "de-DE", null, new ScrapeContext(10000))) {
+			assertArrayEquals(PAGE, IOUtils.toByteArray(response.getBody()));
+		}
+		assertEquals(2, client.getRequests());
+		// one response, with the retry in its time: at least 2 x 200ms
+		assertThat(client.getAverageMillis()).isGreaterThanOrEqualTo(400);
+	}
+}
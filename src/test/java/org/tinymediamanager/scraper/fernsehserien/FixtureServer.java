@@ -0,0 +1,306 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.IOUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand-in for fernsehserien.de that serves the pages in src/test/resources/fixtures, so that the scraper can be tested and measured
+ * without the network. Requests that aren't in the corpus get a 404. Latency and errors can be added to see how the scraper copes with a
+ * slow or overloaded site. Providers and parsers that scrape it come from newProvider() and newParser().
+ *
+ * The pages were written after the markup of the site, they aren't recordings of it. Run main() to record the corpus from the real site,
+ * and FernsehserienMetadataProviderTest with -Dfernsehserien.live=true to check the rules against it.
+ */
+class FixtureServer {
+	/**
+	 * the recorded requests (path and query, as the scraper sends them) and the fixtures with their responses
+	 */
+	static final Map<String, String> CORPUS;
+
+	static {
+		Map<String, String> corpus = new LinkedHashMap<>();
+		corpus.put("/fastsearch?suchwort=Malcolm+mittendrin", "fastsearch-malcolm-mittendrin.json");
+		corpus.put("/fastsearch?suchwort=Die+Deutschen", "fastsearch-die-deutschen.json");
+		corpus.put("/suche/Die+Deutschen", "suche-die-deutschen.html.gz");
+		corpus.put("/malcolm-mittendrin", "show-malcolm-mittendrin.html.gz");
+		corpus.put("/malcolm-mittendrin/episodenguide", "episodenguide-malcolm-mittendrin.html.gz");
+		corpus.put("/malcolm-mittendrin/folgen/1x01-folge-1-100001", "episode-malcolm-mittendrin-1x01.html.gz");
+		corpus.put("/die-lange-soap/episodenguide", "episodenguide-large.html.gz");
+		CORPUS = Collections.unmodifiableMap(corpus);
+	}
+
+	private final ConcurrentMap<String, byte[]> pages = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+	private final AtomicInteger failures = new AtomicInteger();
+	private final AtomicLong latencyMillis = new AtomicLong();
+	private volatile int failureStatus = 503;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * start the server on a free port
+	 */
+	FixtureServer start() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					serve(exchange);
+				}
+				finally {
+					exchange.close();
+				}
+			}
+		});
+		// requests are answered in parallel like the real site does
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.start();
+		return this;
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * @return the base url of the server with a trailing /
+	 */
+	String getSite() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+	/**
+	 * @return a provider that scrapes this server
+	 */
+	FernsehserienMetadataProvider newProvider() {
+		return new FernsehserienMetadataProvider(getSite());
+	}
+
+	/**
+	 * @return a parser that scrapes this server
+	 */
+	FernsehserienTvShowParser newParser(ScrapeContext context) {
+		return new FernsehserienTvShowParser(FernsehserienSiteDefinition.FERNSEHSERIEN_COM, getSite(), context);
+	}
+
+	/**
+	 * serve a page that isn't in the corpus
+	 *
+	 * @param request the path (and query) as the scraper sends it, e.g. /some-show/episodenguide
+	 * @param body the page (not compressed)
+	 */
+	void put(String request, byte[] body) {
+		pages.put(request, body);
+	}
+
+	/**
+	 * @param millis how long to wait before answering a request
+	 */
+	void setLatency(long millis) {
+		latencyMillis.set(millis);
+	}
+
+	/**
+	 * answer the next requests with an error
+	 *
+	 * @param count the number of requests that fail
+	 * @param status the HTTP status, e.g. 503; 429 and 503 come with Retry-After: 0
+	 */
+	void failNext(int count, int status) {
+		failureStatus = status;
+		failures.set(count);
+	}
+
+	/**
+	 * @return the number of requests for the path (and query) so far
+	 */
+	int getRequests(String path) {
+		AtomicInteger count = requests.get(path);
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * @return the number of requests so far
+	 */
+	int getRequests() {
+		int total = 0;
+		for (AtomicInteger count : requests.values()) {
+			total += count.get();
+		}
+		return total;
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		// the scraper puts a // between the site and the path of an episode; as an URI that would be a host
+		String request = exchange.getRequestURI().toString().replaceFirst("^/{2,}", "/");
+		count(request);
+
+		long latency = latencyMillis.get();
+		if (latency > 0) {
+			try {
+				Thread.sleep(latency);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		if (takeFailure()) {
+			if (failureStatus == 429 || failureStatus == 503) {
+				exchange.getResponseHeaders().add("Retry-After", "0");
+			}
+			exchange.sendResponseHeaders(failureStatus, -1);
+			return;
+		}
+
+		String fixture = CORPUS.get(request);
+		byte[] stored = fixture == null ? pages.get(request) : readFixture(fixture);
+		if (stored == null) {
+			exchange.sendResponseHeaders(404, -1);
+			return;
+		}
+		boolean json = fixture == null ? request.startsWith("/fastsearch") : fixture.endsWith(".json");
+		String etag = "\"" + Integer.toHexString(Arrays.hashCode(stored)) + "\"";
+		exchange.getResponseHeaders().add("ETag", etag);
+		exchange.getResponseHeaders().add("Content-Type", json ? "application/json; charset=utf-8" : "text/html; charset=utf-8");
+		if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		byte[] body = stored;
+		boolean gzipped = fixture != null && fixture.endsWith(".gz");
+		String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (gzipped && accepted != null && accepted.contains("gzip")) {
+			exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+		}
+		else if (gzipped) {
+			body = gunzip(stored);
+		}
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private boolean takeFailure() {
+		for (int left = failures.get(); left > 0; left = failures.get()) {
+			if (failures.compareAndSet(left, left - 1)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void count(String request) {
+		AtomicInteger count = requests.get(request);
+		if (count == null) {
+			AtomicInteger created = new AtomicInteger();
+			count = requests.putIfAbsent(request, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+	}
+
+	private static byte[] readFixture(String name) throws IOException {
+		try (InputStream is = FixtureServer.class.getResourceAsStream("/fixtures/" + name)) {
+			if (is == null) {
+				throw new IOException("fixture " + name + " is missing");
+			}
+			return IOUtils.toByteArray(is);
+		}
+	}
+
+	/**
+	 * @return the text of a fixture of the corpus
+	 */
+	static String readText(String fixture) throws IOException {
+		byte[] stored = readFixture(fixture);
+		return new String(fixture.endsWith(".gz") ? gunzip(stored) : stored, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] gunzip(byte[] data) throws IOException {
+		try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			return IOUtils.toByteArray(is);
+		}
+	}
+
+	/**
+	 * record the corpus again from the real site. Pages that can't be fetched (e.g. an episode that got another url) are left as they are.
+	 *
+	 * @param site the real site, e.g. https://www.fernsehserien.de/
+	 * @param directory where the fixtures go, e.g. src/test/resources/fixtures
+	 */
+	static void record(String site, File directory) throws Exception {
+		FernsehserienHttpClient client = FernsehserienHttpClient.getInstance();
+		for (Map.Entry<String, String> entry : CORPUS.entrySet()) {
+			byte[] body;
+			try (FernsehserienHttpClient.Response response = client.get(site + entry.getKey().substring(1), "de-de,de;q=0.9,en;q=0.8", null,
+					new ScrapeContext(60000))) {
+				body = IOUtils.toByteArray(response.getBody());
+			}
+			catch (IOException e) {
+				System.out.println("could not record " + entry.getKey() + ": " + e);
+				continue;
+			}
+			File file = new File(directory, entry.getValue());
+			try (OutputStream os = entry.getValue().endsWith(".gz") ? new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file)) {
+				os.write(body);
+			}
+			System.out.println("recorded " + entry.getKey() + " to " + file);
+		}
+	}
+
+	/**
+	 * record the corpus: FixtureServer [site] [directory]
+	 */
+	public static void main(String[] args) throws Exception {
+		String site = args.length > 0 ? args[0] : "https://www.fernsehserien.de/";
+		File directory = new File(args.length > 1 ? args[1] : "src/test/resources/fixtures");
+		record(site, directory);
+	}
+}
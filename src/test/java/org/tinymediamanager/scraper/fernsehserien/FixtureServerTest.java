@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FixtureServerTest {
+	private FixtureServer server;
+	private FernsehserienHttpClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new FixtureServer().start();
+		client = new FernsehserienHttpClient(new HostRateLimiter(100, 0, 10));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void testCorpusIsServed() throws Exception {
+		for (String request : FixtureServer.CORPUS.keySet()) {
+			try (FernsehserienHttpClient.Response response = client.get(server.getSite() + request.substring(1), "de-DE", null,
+					new ScrapeContext(10000))) {
+				assertThat(IOUtils.toByteArray(response.getBody()).length).isGreaterThan(100);
+			}
+		}
+		// the scraper puts a // before the path of an episode
+		try (FernsehserienHttpClient.Response response = client.get(server.getSite() + "/malcolm-mittendrin/folgen/1x01-folge-1-100001", "de-DE",
+				null, new ScrapeContext(10000))) {
+			assertThat(new String(IOUtils.toByteArray(response.getBody()), "UTF-8")).contains("Malcolm, der Held");
+		}
+		assertEquals(2, server.getRequests("/malcolm-mittendrin/folgen/1x01-folge-1-100001"));
+
+		try {
+			client.get(server.getSite() + "gibt-es-nicht", "de-DE", null, new ScrapeContext(10000)).close();
+			fail("expected an IOException");
+		}
+		catch (IOException e) {
+			assertThat(e.getMessage()).contains("HTTP 404");
+		}
+	}
+
+	@Test
+	public void testErrorsAndLatency() throws Exception {
+		server.failNext(2, 503);
+		try (FernsehserienHttpClient.Response response = client.get(server.getSite() + "malcolm-mittendrin", "de-DE", null,
+				new ScrapeContext(10000)); InputStream body = response.getBody()) {
+			assertThat(IOUtils.toString(body, "UTF-8")).contains("Malcolm mittendrin");
+		}
+		assertEquals(3, server.getRequests("/malcolm-mittendrin"));
+		assertEquals(3, client.getRequests());
+
+		server.setLatency(500);
+		long start = System.currentTimeMillis();
+		try {
+			client.get(server.getSite() + "malcolm-mittendrin", "de-DE", null, new ScrapeContext(10000), 100).close();
+			fail("expected a timeout");
+		}
+		catch (SocketTimeoutException e) {
+			assertThat(System.currentTimeMillis() - start).isLessThan(500);
+		}
+	}
+}
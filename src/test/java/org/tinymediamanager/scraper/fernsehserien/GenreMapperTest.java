@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.tinymediamanager.scraper.entities.MediaGenres;
+
+public class GenreMapperTest {
+
+	@Before
+	public void setUp() {
+		GenreMapper.forget();
+	}
+
+	@Test
+	public void testGetGenre() {
+		// the names of IMDb
+		assertEquals(MediaGenres.SCIENCE_FICTION, GenreMapper.getGenre("Sci-Fi"));
+		assertEquals(MediaGenres.REALITY_TV, GenreMapper.getGenre("Reality-TV"));
+		assertEquals(MediaGenres.TALK_SHOW, GenreMapper.getGenre("Talk-Show"));
+		// the names of fernsehserien.de
+		assertEquals(MediaGenres.CRIME, GenreMapper.getGenre("Krimi"));
+		assertEquals(MediaGenres.COMEDY, GenreMapper.getGenre("Sitcom"));
+		assertEquals(MediaGenres.DOCUMENTARY, GenreMapper.getGenre("Dokumentation"));
+		assertEquals(MediaGenres.ANIMATION, GenreMapper.getGenre("Zeichentrick"));
+		// other spellings
+		assertEquals(MediaGenres.SCIENCE_FICTION, GenreMapper.getGenre("science fiction"));
+		assertEquals(MediaGenres.COMEDY, GenreMapper.getGenre("Komoedie"));
+		assertEquals(MediaGenres.CRIME, GenreMapper.getGenre("Krimiserie"));
+		assertEquals(MediaGenres.FAMILY, GenreMapper.getGenre("Familienserie"));
+		assertEquals(MediaGenres.ANIMATION, GenreMapper.getGenre("Animationsserie"));
+		assertEquals(MediaGenres.DOCUMENTARY, GenreMapper.getGenre("Dokureihe"));
+
+		assertNull(GenreMapper.getGenre(null));
+		assertNull(GenreMapper.getGenre(" "));
+	}
+
+	@Test
+	public void testFallback() {
+		// tmm knows it by its own name
+		assertEquals(MediaGenres.SILENT_MOVIE, GenreMapper.getGenre("Silent Movie"));
+		// no genre of tmm means the same, so they aren't mapped to one that comes close
+		assertNotEquals(MediaGenres.NEWS, GenreMapper.getGenre("Magazin"));
+		assertNotEquals(MediaGenres.FAMILY, GenreMapper.getGenre("Kinderserie"));
+		assertNotEquals(MediaGenres.FAMILY, GenreMapper.getGenre("Jugendserie"));
+		assertEquals(4, GenreMapper.getRemembered());
+
+		// asked once, then remembered
+		MediaGenres unknown = GenreMapper.getGenre("Heimatfilm");
+		assertNotNull(unknown);
+		assertEquals(5, GenreMapper.getRemembered());
+		assertSame(unknown, GenreMapper.getGenre("Heimatfilm"));
+		assertEquals(5, GenreMapper.getRemembered());
+	}
+
+	@Test
+	public void testRememberedAreBounded() {
+		// other spellings of Krimi: each one is remembered, but the table answers them, so tmm gets no new genres
+		for (int i = 1; i <= GenreMapper.MAX_REMEMBERED + 100; i++) {
+			assertEquals(MediaGenres.CRIME, GenreMapper.getGenre("Krimi" + StringUtils.repeat('!', i)));
+		}
+		assertEquals(GenreMapper.MAX_REMEMBERED, GenreMapper.getRemembered());
+		// the names after that are still mapped
+		assertEquals(MediaGenres.CRIME, GenreMapper.getGenre("Krimi?"));
+		assertEquals(GenreMapper.MAX_REMEMBERED, GenreMapper.getRemembered());
+	}
+}
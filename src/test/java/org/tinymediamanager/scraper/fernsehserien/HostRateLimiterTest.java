@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.config.MediaProviderConfig;
+
+public class HostRateLimiterTest {
+
+	@Test
+	public void testRateIsLimited() throws Exception {
+		HostRateLimiter limiter = new HostRateLimiter(20, 0, 10);
+		ScrapeContext context = new ScrapeContext(10000);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 11; i++) {
+			limiter.acquire("www.fernsehserien.de", context);
+		}
+		// one request right away, then one every 50ms
+		assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(450);
+		assertThat(limiter.getWaits()).isGreaterThan(0);
+
+		// other hosts have their own bucket
+		long waits = limiter.getWaits();
+		limiter.acquire("bilder.fernsehserien.de", context);
+		assertEquals(waits, limiter.getWaits());
+	}
+
+	@Test
+	public void testThrottledHostIsPaused() throws Exception {
+		HostRateLimiter limiter = new HostRateLimiter(10, 60000, 10);
+		assertEquals(5, limiter.getRate("www.fernsehserien.de"), 0.5);
+		limiter.throttled("www.fernsehserien.de", 200, 0);
+		assertEquals(1, limiter.getThrottled());
+		assertThat(limiter.getRate("www.fernsehserien.de")).isLessThan(5);
+
+		long start = System.currentTimeMillis();
+		limiter.acquire("www.fernsehserien.de", new ScrapeContext(10000));
+		assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(200);
+
+		// no waiting past the deadline
+		limiter.throttled("www.fernsehserien.de", 5000, 0);
+		try {
+			limiter.acquire("www.fernsehserien.de", new ScrapeContext(100));
+			fail("expected a timeout");
+		}
+		catch (TimeoutException e) {
+			assertThat(e.getMessage()).contains("www.fernsehserien.de");
+		}
+	}
+
+	@Test
+	public void testSettingsAreReadBeforeEveryRequest() throws Exception {
+		// created before the provider has defined its settings, like the limiter of the http client
+		HostRateLimiter limiter = HostRateLimiter.create();
+		new FernsehserienMetadataProvider();
+		MediaProviderConfig config = FernsehserienMetadataProvider.providerInfo.getConfig();
+		String maxRate = config.getValue("maxRequestsPerSecond");
+		String rampUp = config.getValue("rampUpSeconds");
+		try {
+			config.setValue("maxRequestsPerSecond", "20");
+			config.setValue("rampUpSeconds", "0");
+			ScrapeContext context = new ScrapeContext(10000);
+			long start = System.currentTimeMillis();
+			for (int i = 0; i < 11; i++) {
+				limiter.acquire("www.fernsehserien.de", context);
+			}
+			assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(450);
+			assertEquals(20, limiter.getRate("www.fernsehserien.de"), 0.01);
+
+			// changed settings apply to the next request
+			config.setValue("maxRequestsPerSecond", "2");
+			limiter.acquire("www.fernsehserien.de", context);
+			assertEquals(2, limiter.getRate("www.fernsehserien.de"), 0.01);
+		}
+		finally {
+			config.setValue("maxRequestsPerSecond", maxRate);
+			config.setValue("rampUpSeconds", rampUp);
+		}
+	}
+
+	@Test
+	public void testBackoff() {
+		HostRateLimiter limiter = new HostRateLimiter(10, 0, 1000);
+		assertThat(limiter.backoffMillis(0)).isBetween(500L, 1500L);
+		assertThat(limiter.backoffMillis(2)).isBetween(2000L, 6000L);
+		assertThat(limiter.backoffMillis(30)).isLessThanOrEqualTo(90000L);
+	}
+
+	@Test
+	public void testParseRetryAfter() {
+		assertEquals(0, HostRateLimiter.parseRetryAfter(null));
+		assertEquals(0, HostRateLimiter.parseRetryAfter("soon"));
+		assertEquals(120000, HostRateLimiter.parseRetryAfter("120"));
+		assertEquals(300000, HostRateLimiter.parseRetryAfter("86400"));
+
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		long retryAfter = HostRateLimiter.parseRetryAfter(format.format(new Date(System.currentTimeMillis() + 60000)));
+		assertThat(retryAfter).isBetween(55000L, 60000L);
+	}
+}
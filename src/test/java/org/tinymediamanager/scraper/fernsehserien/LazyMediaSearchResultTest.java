@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaSearchResult;
+import org.tinymediamanager.scraper.entities.MediaType;
+
+public class LazyMediaSearchResultTest {
+
+	@Test
+	public void testTemporaryFailureIsRetried() throws Exception {
+		StubParser parser = new StubParser(new IOException("HTTP 503 for https://www.fernsehserien.de/malcolm-mittendrin, 3 times in a row"),
+				new MediaMetadata("fernsehserien"));
+		LazyMediaSearchResult result = newResult(parser, 0);
+
+		assertNull(result.getMediaMetadata());
+		assertEquals(LazyMediaSearchResult.Status.UNAVAILABLE, result.getStatus());
+		assertNotNull(result.getMediaMetadata());
+		assertEquals(LazyMediaSearchResult.Status.LOADED, result.getStatus());
+		assertEquals(2, parser.calls);
+	}
+
+	@Test
+	public void testTemporaryFailureWaitsBeforeRetry() throws Exception {
+		StubParser parser = new StubParser(new IOException("HTTP 429 for https://www.fernsehserien.de/malcolm-mittendrin"),
+				new MediaMetadata("fernsehserien"));
+		LazyMediaSearchResult result = newResult(parser, 60000);
+
+		assertNull(result.getMediaMetadata());
+		assertNull(result.getMediaMetadata());
+		assertEquals(LazyMediaSearchResult.Status.UNAVAILABLE, result.getStatus());
+		assertEquals(1, parser.calls);
+	}
+
+	@Test
+	public void testPermanentFailureIsRemembered() throws Exception {
+		StubParser parser = new StubParser(new IOException("HTTP 404 for https://www.fernsehserien.de/gibt-es-nicht"),
+				new MediaMetadata("fernsehserien"));
+		LazyMediaSearchResult result = newResult(parser, 0);
+
+		assertNull(result.getMediaMetadata());
+		assertNull(result.getMediaMetadata());
+		assertEquals(LazyMediaSearchResult.Status.FAILED, result.getStatus());
+		assertEquals(1, parser.calls);
+	}
+
+	@Test
+	public void testTimeoutDuringLoadIsRetried() throws Exception {
+		// the first load hangs until the enrichment cancels it
+		StubParser parser = new StubParser(StubParser.HANG, new MediaMetadata("fernsehserien"));
+		LazyMediaSearchResult result = newResult(parser, 60000);
+		ScraperExecutor executor = new ScraperExecutor("test", 1, ScraperExecutor.MODE_THREADS);
+		try {
+			new SearchResultEnricher(executor, 100).enrich(Collections.<MediaSearchResult> singletonList(result));
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		// waits for the cancelled load to finish, then loads again
+		assertNotNull(result.getMediaMetadata());
+		assertEquals(LazyMediaSearchResult.Status.LOADED, result.getStatus());
+		assertEquals(2, parser.calls);
+	}
+
+	@Test
+	public void testGetFailure() {
+		assertEquals(LazyMediaSearchResult.Status.TIMED_OUT, LazyMediaSearchResult.getFailure(new SocketTimeoutException()));
+		assertEquals(LazyMediaSearchResult.Status.TIMED_OUT, LazyMediaSearchResult.getFailure(new TimeoutException("no time left")));
+		assertEquals(LazyMediaSearchResult.Status.UNAVAILABLE, LazyMediaSearchResult.getFailure(new ConnectException()));
+		assertEquals(LazyMediaSearchResult.Status.FAILED, LazyMediaSearchResult.getFailure(new IllegalStateException("no show")));
+		assertEquals(LazyMediaSearchResult.Status.TIMED_OUT, LazyMediaSearchResult.getFailure(new InterruptedException()));
+		// getFailure() kept the flag
+		assertTrue(Thread.interrupted());
+	}
+
+	private static LazyMediaSearchResult newResult(StubParser parser, long retryDelayMillis) {
+		LazyMediaSearchResult result = new LazyMediaSearchResult(parser, new MediaScrapeOptions(MediaType.TV_SHOW), retryDelayMillis);
+		result.setId("malcolm-mittendrin");
+		return result;
+	}
+
+	/*
+	 * a parser that answers with the given metadata or exceptions, one per call
+	 */
+	static class StubParser extends FernsehserienTvShowParser {
+		// blocks until the thread is interrupted
+		static final Object HANG = new Object();
+
+		private final Queue<Object> answers = new LinkedList<>();
+		volatile int calls;
+
+		StubParser(Object... answers) {
+			super(FernsehserienSiteDefinition.FERNSEHSERIEN_COM, new ScrapeContext(10000));
+			for (Object answer : answers) {
+				this.answers.add(answer);
+			}
+		}
+
+		@Override
+		FernsehserienTvShowParser newScrape() {
+			return this;
+		}
+
+		@Override
+		MediaMetadata getTvShowMetadata(String fernsehserienId, MediaScrapeOptions options) throws Exception {
+			calls++;
+			Object answer = answers.remove();
+			if (answer == HANG) {
+				Thread.sleep(60000);
+			}
+			if (answer instanceof Exception) {
+				throw (Exception) answer;
+			}
+			return (MediaMetadata) answer;
+		}
+	}
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaProviderInfo;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaSearchOptions;
+import org.tinymediamanager.scraper.MediaSearchResult;
+import org.tinymediamanager.scraper.entities.CountryCode;
+import org.tinymediamanager.scraper.entities.MediaEpisode;
+import org.tinymediamanager.scraper.entities.MediaGenres;
+import org.tinymediamanager.scraper.entities.MediaType;
+import org.tinymediamanager.scraper.mediaprovider.IMediaProvider;
+import org.tinymediamanager.scraper.mediaprovider.IMovieMetadataProvider;
+import org.tinymediamanager.scraper.mediaprovider.ITvShowMetadataProvider;
+
+/**
+ * Scrapes a synthetic library of shows x episodes like tmm does when a library is scanned: search, show metadata, episode list and the
+ * metadata of every episode. fernsehserien.de is replaced by a FixtureServer with a copy of "Malcolm mittendrin" per show, tvdb/tmdb/imdb
+ * by stubs; both can be given a latency. The report has the throughput, the latency percentiles per stage, how busy the thread pools of
+ * the scraper were and how many requests were sent, so that runs before and after a change can be compared.
+ *
+ * Run main() with key=value arguments, e.g. shows=200 episodes=50 threads=4 siteLatency=50 providerLatency=100 rate=8.
+ */
+class LoadHarness {
+	static final String SEARCH = "search";
+	static final String SHOW = "show";
+	static final String EPISODE_LIST = "episodeList";
+	static final String EPISODE = "episode";
+
+	private static final Pattern EPISODE_LINK = Pattern.compile("href=\"/([^\"]+/folgen/[^\"]+)\"");
+
+	private final int shows;
+	private final int episodes;
+	private final int threads;
+	private final long siteLatency;
+	private final long providerLatency;
+
+	/**
+	 * @param shows the number of shows in the library
+	 * @param episodes the number of episodes scraped per show, up to 151
+	 * @param threads how many shows are scraped at once
+	 * @param siteLatency the latency of the stand-in for fernsehserien.de in ms
+	 * @param providerLatency the latency of the other providers in ms
+	 */
+	LoadHarness(int shows, int episodes, int threads, long siteLatency, long providerLatency) {
+		this.shows = shows;
+		this.episodes = episodes;
+		this.threads = threads;
+		this.siteLatency = siteLatency;
+		this.providerLatency = providerLatency;
+	}
+
+	/**
+	 * scrape the library
+	 *
+	 * @return the measurements
+	 */
+	Report run() throws Exception {
+		FixtureServer server = new FixtureServer().start();
+		final FernsehserienMetadataProvider provider = server.newProvider();
+		// every scrape has to go to the site, not to what an earlier run left behind
+		String useLocalStore = FernsehserienMetadataProvider.providerInfo.getConfig().getValue("useLocalStore");
+		FernsehserienMetadataProvider.providerInfo.getConfig().setValue("useLocalStore", false);
+
+		StubRegistry stubs = new StubRegistry(providerLatency);
+		ProviderRegistry previousRegistry = ProviderRegistry.setInstance(stubs);
+		ExecutorService library = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("load-harness"));
+		PoolSampler sampler = new PoolSampler();
+		try {
+			String run = Long.toString(System.nanoTime(), 36);
+			List<String> titles = new ArrayList<>();
+			for (int i = 0; i < shows; i++) {
+				titles.add(addShow(server, run, i));
+			}
+			server.setLatency(siteLatency);
+
+			FernsehserienHttpClient client = FernsehserienHttpClient.getInstance();
+			long requestsBefore = client.getRequests();
+			final Report report = new Report(this);
+			sampler.start();
+			long start = System.nanoTime();
+			List<Future<Void>> futures = new ArrayList<>();
+			for (final String title : titles) {
+				futures.add(library.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						scrapeShow(provider, title, report);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+			report.wallNanos = System.nanoTime() - start;
+			sampler.stop();
+
+			report.siteRequests = client.getRequests() - requestsBefore;
+			report.served = server.getRequests();
+			report.providerCalls = stubs.calls.get();
+			report.pools = sampler.report();
+			report.metrics = ScraperMetrics.getInstance().snapshot();
+			return report;
+		}
+		finally {
+			sampler.stop();
+			library.shutdownNow();
+			ProviderRegistry.setInstance(previousRegistry);
+			FernsehserienMetadataProvider.providerInfo.getConfig().setValue("useLocalStore", useLocalStore);
+			server.stop();
+		}
+	}
+
+	/*
+	 * a copy of Malcolm mittendrin with its own slug and title; returns the title
+	 */
+	private String addShow(FixtureServer server, String run, int index) throws Exception {
+		String slug = String.format(Locale.ROOT, "serie-%s-%04d", run, index);
+		String title = String.format(Locale.ROOT, "Serie %s %04d", run, index);
+		server.put("/fastsearch?suchwort=" + title.replace(' ', '+'), copy("fastsearch-malcolm-mittendrin.json", slug, title));
+		server.put("/" + slug, copy("show-malcolm-mittendrin.html.gz", slug, title));
+		byte[] guide = copy("episodenguide-malcolm-mittendrin.html.gz", slug, title);
+		server.put("/" + slug + "/episodenguide", guide);
+		byte[] episode = copy("episode-malcolm-mittendrin-1x01.html.gz", slug, title);
+		Matcher matcher = EPISODE_LINK.matcher(new String(guide, StandardCharsets.UTF_8));
+		while (matcher.find()) {
+			server.put("/" + matcher.group(1), episode);
+		}
+		return title;
+	}
+
+	private static byte[] copy(String fixture, String slug, String title) throws Exception {
+		return FixtureServer.readText(fixture).replace("malcolm-mittendrin", slug).replace("Malcolm mittendrin", title)
+				.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private void scrapeShow(FernsehserienMetadataProvider provider, String title, Report report) {
+		try {
+			long start = System.nanoTime();
+			MediaSearchOptions query = new MediaSearchOptions(MediaType.TV_SHOW, title);
+			query.setLanguage(Locale.GERMAN);
+			query.setCountry(CountryCode.DE);
+			List<MediaSearchResult> results = provider.search(query);
+			report.record(SEARCH, start, !results.isEmpty());
+			if (results.isEmpty()) {
+				return;
+			}
+			String id = results.get(0).getId();
+
+			start = System.nanoTime();
+			MediaMetadata md = provider.getMetadata(newOptions(MediaType.TV_SHOW, id));
+			report.record(SHOW, start, md.getYear() > 0);
+
+			start = System.nanoTime();
+			List<MediaEpisode> list = provider.getEpisodeList(newOptions(MediaType.TV_SHOW, id));
+			report.record(EPISODE_LIST, start, !list.isEmpty());
+
+			for (MediaEpisode episode : list.subList(0, Math.min(episodes, list.size()))) {
+				MediaScrapeOptions options = newOptions(MediaType.TV_EPISODE, id);
+				options.setId(MediaMetadata.SEASON_NR, Integer.toString(episode.season));
+				options.setId(MediaMetadata.EPISODE_NR, Integer.toString(episode.episode));
+				start = System.nanoTime();
+				md = provider.getMetadata(options);
+				report.record(EPISODE, start, md.getTitle() != null && !md.getTitle().isEmpty());
+			}
+		}
+		catch (Exception e) {
+			report.fail(e);
+		}
+	}
+
+	private static MediaScrapeOptions newOptions(MediaType type, String id) {
+		MediaScrapeOptions options = new MediaScrapeOptions(type);
+		options.setId(FernsehserienMetadataProvider.providerInfo.getId(), id);
+		// the show is looked up without the provider id
+		options.setId("", id);
+		options.setLanguage(Locale.GERMAN);
+		options.setCountry(CountryCode.DE);
+		return options;
+	}
+
+	/**
+	 * The measurements of a run
+	 */
+	static class Report {
+		private final LoadHarness harness;
+		private final Map<String, Stage> stages = new LinkedHashMap<>();
+		private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+		long wallNanos;
+		long siteRequests;
+		int served;
+		long providerCalls;
+		List<String> pools;
+		// what the scraper measured itself (of the whole JVM, not only of this run)
+		Map<String, Number> metrics = Collections.emptyMap();
+
+		Report(LoadHarness harness) {
+			this.harness = harness;
+			for (String stage : Arrays.asList(SEARCH, SHOW, EPISODE_LIST, EPISODE)) {
+				stages.put(stage, new Stage());
+			}
+		}
+
+		void record(String stage, long start, boolean ok) {
+			stages.get(stage).add(System.nanoTime() - start, ok);
+		}
+
+		void fail(Exception e) {
+			failures.add(e.toString());
+		}
+
+		Stage getStage(String stage) {
+			return stages.get(stage);
+		}
+
+		List<String> getFailures() {
+			return failures;
+		}
+
+		/**
+		 * @return the scrapes (all stages) per second
+		 */
+		double getThroughput() {
+			long count = 0;
+			for (Stage stage : stages.values()) {
+				count += stage.getCount();
+			}
+			return wallNanos == 0 ? 0 : count * 1e9 / wallNanos;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format(Locale.ROOT, "%d shows x %d episodes, %d threads, site latency %dms, provider latency %dms%n", harness.shows,
+					harness.episodes, harness.threads, harness.siteLatency, harness.providerLatency));
+			sb.append(String.format(Locale.ROOT, "%.1fs, %.1f scrapes/s, %.2f shows/s%n", wallNanos / 1e9, getThroughput(),
+					stages.get(SHOW).getCount() * 1e9 / Math.max(1, wallNanos)));
+			sb.append(String.format(Locale.ROOT, "%-12s %7s %7s %9s %9s %9s %9s%n", "stage", "count", "failed", "p50 ms", "p95 ms", "p99 ms",
+					"max ms"));
+			for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+				Stage stage = entry.getValue();
+				sb.append(String.format(Locale.ROOT, "%-12s %7d %7d %9.1f %9.1f %9.1f %9.1f%n", entry.getKey(), stage.getCount(), stage.getFailed(),
+						stage.percentile(50), stage.percentile(95), stage.percentile(99), stage.percentile(100)));
+			}
+			for (Map.Entry<String, Number> entry : metrics.entrySet()) {
+				String key = entry.getKey();
+				if (key.startsWith("stage.") && key.endsWith(".count")) {
+					String timer = key.substring(0, key.length() - ".count".length());
+					sb.append(String.format(Locale.ROOT, "%-32s %7d avg %8.1f ms, max %8.1f ms%n", timer, entry.getValue().longValue(),
+							metrics.get(timer + ".avgMillis").doubleValue(), metrics.get(timer + ".maxMillis").doubleValue()));
+				}
+			}
+			for (String pool : pools) {
+				sb.append(pool).append(String.format("%n"));
+			}
+			sb.append(String.format(Locale.ROOT, "requests: %d to the site (%d served), %d to the other providers%n", siteRequests, served,
+					providerCalls));
+			if (!failures.isEmpty()) {
+				sb.append(failures.size()).append(" shows failed, e.g. ").append(failures.get(0)).append(String.format("%n"));
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * The latencies of one stage
+	 */
+	static class Stage {
+		private long[] nanos = new long[64];
+		private int count;
+		private int failed;
+
+		synchronized void add(long elapsed, boolean ok) {
+			if (count == nanos.length) {
+				nanos = Arrays.copyOf(nanos, count * 2);
+			}
+			nanos[count++] = elapsed;
+			if (!ok) {
+				failed++;
+			}
+		}
+
+		synchronized int getCount() {
+			return count;
+		}
+
+		synchronized int getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @param percent e.g. 95; 100 for the maximum
+		 * @return the latency in ms (nearest rank)
+		 */
+		synchronized double percentile(double percent) {
+			if (count == 0) {
+				return 0;
+			}
+			long[] sorted = Arrays.copyOf(nanos, count);
+			Arrays.sort(sorted);
+			int rank = (int) Math.ceil(percent / 100 * count);
+			return sorted[Math.max(0, rank - 1)] / 1e6;
+		}
+	}
+
+	/*
+	 * looks at the thread pools of the scraper every few ms to see how often all of their threads were busy
+	 */
+	private static class PoolSampler implements Runnable {
+		private final ScraperExecutor[] executors = { ScraperExecutor.site(), ScraperExecutor.providers() };
+		private final long[] busy = new long[executors.length];
+		private final int[] maxQueue = new int[executors.length];
+		private long samples;
+		private volatile boolean running;
+		private Thread thread;
+
+		void start() {
+			running = true;
+			thread = new DaemonThreadFactory("load-harness-sampler").newThread(this);
+			thread.start();
+		}
+
+		void stop() throws InterruptedException {
+			running = false;
+			if (thread != null) {
+				thread.join();
+			}
+		}
+
+		@Override
+		public void run() {
+			while (running) {
+				samples++;
+				for (int i = 0; i < executors.length; i++) {
+					if (executors[i].getActiveCount() >= executors[i].getSize()) {
+						busy[i]++;
+					}
+					maxQueue[i] = Math.max(maxQueue[i], executors[i].getQueueDepth());
+				}
+				try {
+					Thread.sleep(5);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+
+		List<String> report() {
+			List<String> lines = new ArrayList<>();
+			for (int i = 0; i < executors.length; i++) {
+				ScraperExecutor executor = executors[i];
+				lines.add(String.format(Locale.ROOT, "%s pool: %d %s, saturated %.0f%% of the time, queue max %d, wait avg %.1fms max %.1fms, %d tasks",
+						executor.getName(), executor.getSize(), executor.isVirtual() ? "virtual threads" : "threads",
+						samples == 0 ? 0 : busy[i] * 100d / samples, maxQueue[i], executor.getAverageWaitMillis(), executor.getMaxWaitMillis(),
+						executor.getCompletedCount()));
+			}
+			return lines;
+		}
+	}
+
+	/*
+	 * tvdb, tmdb and imdb: every search finds the show, every show has two genres
+	 */
+	private static class StubRegistry extends ProviderRegistry {
+		private final List<IMediaProvider> providers = new ArrayList<>();
+		private final AtomicLong calls = new AtomicLong();
+
+		StubRegistry(long latency) {
+			for (String id : Arrays.asList("tvdb", "tmdb", "imdb")) {
+				providers.add(new StubProvider(id, latency, calls));
+			}
+		}
+
+		@Override
+		protected Object getOwner() {
+			return this;
+		}
+
+		@Override
+		protected <T extends IMediaProvider> List<T> lookup(Class<T> type) {
+			List<T> result = new ArrayList<>();
+			for (IMediaProvider provider : providers) {
+				result.add(type.cast(provider));
+			}
+			return result;
+		}
+	}
+
+	private static class StubProvider implements ITvShowMetadataProvider, IMovieMetadataProvider {
+		private final MediaProviderInfo info;
+		private final long latency;
+		private final AtomicLong calls;
+
+		StubProvider(String id, long latency, AtomicLong calls) {
+			this.info = new MediaProviderInfo(id, id, id);
+			this.latency = latency;
+			this.calls = calls;
+		}
+
+		private void call() throws InterruptedException {
+			calls.incrementAndGet();
+			if (latency > 0) {
+				Thread.sleep(latency);
+			}
+		}
+
+		@Override
+		public MediaProviderInfo getProviderInfo() {
+			return info;
+		}
+
+		@Override
+		public List<MediaSearchResult> search(MediaSearchOptions options) throws Exception {
+			call();
+			MediaSearchResult result = new MediaSearchResult(info.getId(), options.getMediaType());
+			result.setId(Integer.toString(1000 + Math.abs(options.getQuery().hashCode() % 100000)));
+			result.setTitle(options.getQuery());
+			result.setYear(options.getYear());
+			return Collections.singletonList(result);
+		}
+
+		@Override
+		public MediaMetadata getMetadata(MediaScrapeOptions options) throws Exception {
+			call();
+			MediaMetadata md = new MediaMetadata(info.getId());
+			md.addGenre(MediaGenres.COMEDY);
+			md.addGenre(MediaGenres.FAMILY);
+			return md;
+		}
+
+		@Override
+		public List<MediaEpisode> getEpisodeList(MediaScrapeOptions options) throws Exception {
+			call();
+			return new ArrayList<>();
+		}
+	}
+
+	/**
+	 * scrape a library and print the report: LoadHarness [shows=20] [episodes=10] [threads=4] [siteLatency=50] [providerLatency=100] [rate=8]
+	 */
+	public static void main(String[] args) throws Exception {
+		Map<String, String> settings = new LinkedHashMap<>();
+		for (String arg : args) {
+			String[] kv = arg.split("=", 2);
+			settings.put(kv[0], kv.length > 1 ? kv[1] : "");
+		}
+		// the rate limit is read when the http client is created
+		new FernsehserienMetadataProvider();
+		if (settings.containsKey("rate")) {
+			FernsehserienMetadataProvider.providerInfo.getConfig().setValue("maxRequestsPerSecond", settings.get("rate"));
+		}
+		FernsehserienHttpClient.getInstance();
+		LoadHarness harness = new LoadHarness(get(settings, "shows", 20), get(settings, "episodes", 10), get(settings, "threads", 4),
+				get(settings, "siteLatency", 50), get(settings, "providerLatency", 100));
+		System.out.print(harness.run());
+		new FernsehserienMetadataProvider().shutdown();
+	}
+
+	private static int get(Map<String, String> settings, String key, int defaultValue) {
+		return settings.containsKey(key) ? Integer.parseInt(settings.get(key)) : defaultValue;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LoadHarnessTest {
+
+	@Test
+	public void testSmallLibrary() throws Exception {
+		LoadHarness.Report report = new LoadHarness(2, 3, 2, 0, 0).run();
+		System.out.print(report);
+
+		assertThat(report.getFailures()).isEmpty();
+		assertEquals(2, report.getStage(LoadHarness.SEARCH).getCount());
+		assertEquals(2, report.getStage(LoadHarness.SHOW).getCount());
+		assertEquals(2, report.getStage(LoadHarness.EPISODE_LIST).getCount());
+		assertEquals(6, report.getStage(LoadHarness.EPISODE).getCount());
+		assertEquals(0, report.getStage(LoadHarness.EPISODE).getFailed());
+		assertThat(report.getStage(LoadHarness.EPISODE).percentile(99)).isGreaterThanOrEqualTo(report.getStage(LoadHarness.EPISODE).percentile(50));
+		// per show: fast search, show page, guide and the episodes
+		assertEquals(2 * (3 + 3), report.served);
+		assertThat(report.providerCalls).isGreaterThan(0);
+		assertThat(report.toString()).contains("site pool", "providers pool");
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.entities.MediaArtwork;
+import org.tinymediamanager.scraper.entities.MediaCastMember;
+
+public class MetadataStoreTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSurvivesRestart() throws Exception {
+		File file = new File(folder.getRoot(), "store/metadata.log");
+		MetadataStore store = new MetadataStore(file);
+		store.put("show:malcolm-mittendrin", StoredMetadata.from(createShow("Malcolm mittendrin")));
+		store.put("show:other", StoredMetadata.from(createShow("Other")));
+		store.put("show:malcolm-mittendrin", StoredMetadata.from(createShow("Malcolm, der Held")));
+		store.close();
+
+		store = new MetadataStore(file);
+		assertEquals(2, store.size());
+		MediaMetadata md = store.get("show:malcolm-mittendrin", StoredMetadata.class, 60000).toMediaMetadata("fernsehserien");
+		assertEquals("Malcolm, der Held", md.getTitle());
+		assertEquals(2000, md.getYear());
+		assertEquals(new Date(969746400000L), md.getReleaseDate());
+		assertEquals("malcolm-mittendrin", md.getId("fernsehserien"));
+		assertEquals("tvdb", md.getId("GenreProvider"));
+		assertEquals(1, md.getCastMembers(MediaCastMember.CastType.ACTOR).size());
+		assertEquals("Frankie Muniz", md.getCastMembers().get(0).getName());
+		assertEquals("http://example.org/thumb.jpg", md.getMediaArt(MediaArtwork.MediaArtworkType.THUMB).get(0).getDefaultUrl());
+
+		assertNull(store.get("show:unknown", StoredMetadata.class, 60000));
+		Thread.sleep(5);
+		assertNull(store.get("show:other", StoredMetadata.class, 1));
+		assertEquals(1, store.getStale());
+		store.close();
+	}
+
+	@Test
+	public void testIncompleteRecordIsCutOff() throws Exception {
+		File file = folder.newFile("metadata.log");
+		MetadataStore store = new MetadataStore(file);
+		store.put("a", StoredMetadata.from(createShow("A")));
+		long good = store.getFileLength();
+		store.put("b", StoredMetadata.from(createShow("B")));
+		store.close();
+
+		// the JVM died while writing "b"
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 10);
+		}
+
+		store = new MetadataStore(file);
+		assertEquals(1, store.size());
+		assertEquals(good, store.getFileLength());
+		assertEquals(good, file.length());
+		assertNotNull(store.get("a", StoredMetadata.class, 60000));
+		assertNull(store.get("b", StoredMetadata.class, 60000));
+		store.close();
+	}
+
+	@Test
+	public void testCompaction() throws Exception {
+		File file = folder.newFile("metadata.log");
+		final MetadataStore store = new MetadataStore(file);
+		StoredMetadata[] shows = new StoredMetadata[10];
+		for (int i = 0; i < shows.length; i++) {
+			shows[i] = StoredMetadata.from(createShow("Show " + i));
+			store.put("show:" + i, shows[i]);
+		}
+
+		// a reader must never see the record of another key while the log is compacted under it
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<String> wrong = new AtomicReference<>();
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				for (int i = 0; !done.get(); i++) {
+					StoredMetadata show = store.get("show:" + (i % 10), StoredMetadata.class, 60000);
+					if (show != null && !("Show " + (i % 10)).equals(show.title)) {
+						wrong.set(show.title + " for show:" + (i % 10));
+					}
+				}
+			}
+		};
+		reader.start();
+		// every revalidation writes the record again; the log must not grow with them
+		long max = 0;
+		for (int i = 0; i < 10000; i++) {
+			store.put("show:" + (i % 10), shows[i % 10]);
+			max = Math.max(max, store.getFileLength());
+		}
+		done.set(true);
+		reader.join();
+		assertNull(wrong.get());
+		assertThat(max).isLessThan(1024 * 1024 + 10000);
+		store.close();
+
+		MetadataStore reopened = new MetadataStore(file);
+		assertEquals(10, reopened.size());
+		assertEquals("Show 7", reopened.get("show:7", StoredMetadata.class, 60000).title);
+		reopened.close();
+	}
+
+	@Test
+	public void testFailedCompaction() throws Exception {
+		File file = folder.newFile("metadata.log");
+		final AtomicInteger moves = new AtomicInteger();
+		MetadataStore store = new MetadataStore(file) {
+			@Override
+			void replaceWith(File compacted) throws IOException {
+				// the first time the log is held by someone else
+				if (moves.incrementAndGet() == 1) {
+					throw new IOException("file is in use");
+				}
+				super.replaceWith(compacted);
+			}
+		};
+		StoredMetadata show = StoredMetadata.from(createShow("Show"));
+		for (int i = 0; moves.get() == 0; i++) {
+			store.put("show:" + (i % 10), show);
+		}
+		assertThat(new File(file.getPath() + ".tmp")).doesNotExist();
+
+		// the old log is used on
+		assertEquals(10, store.size());
+		assertEquals("Show", store.get("show:3", StoredMetadata.class, 60000).title);
+		store.put("show:11", StoredMetadata.from(createShow("Show 11")));
+		assertEquals("Show 11", store.get("show:11", StoredMetadata.class, 60000).title);
+		assertEquals(1, moves.get());
+
+		// and compacted once it has grown a bit more
+		for (int i = 0; moves.get() == 1; i++) {
+			store.put("show:" + (i % 10), show);
+		}
+		assertThat(store.getFileLength()).isLessThan(1024 * 1024);
+		store.close();
+
+		MetadataStore reopened = new MetadataStore(file);
+		assertEquals(11, reopened.size());
+		assertEquals("Show 11", reopened.get("show:11", StoredMetadata.class, 60000).title);
+		reopened.close();
+	}
+
+	private static MediaMetadata createShow(String title) {
+		MediaMetadata md = new MediaMetadata("fernsehserien");
+		md.setTitle(title);
+		md.setYear(2000);
+		md.setReleaseDate(new Date(969746400000L));
+		md.setId("fernsehserien", "malcolm-mittendrin");
+		md.setId("GenreProvider", "tvdb");
+		md.setId("GenreProviderResult", new Object());
+		MediaCastMember member = new MediaCastMember(MediaCastMember.CastType.ACTOR);
+		member.setName("Frankie Muniz");
+		member.setCharacter("Malcolm");
+		md.addCastMember(member);
+		MediaArtwork artwork = new MediaArtwork("fernsehserien", MediaArtwork.MediaArtworkType.THUMB);
+		artwork.setDefaultUrl("http://example.org/thumb.jpg");
+		md.addMediaArt(artwork);
+		return md;
+	}
+}
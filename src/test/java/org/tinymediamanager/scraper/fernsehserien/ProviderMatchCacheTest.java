@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaSearchResult;
+import org.tinymediamanager.scraper.entities.MediaType;
+
+public class ProviderMatchCacheTest {
+
+	@Test
+	public void testMatchAndNoMatch() throws Exception {
+		ProviderMatchCache cache = new ProviderMatchCache(10, 60000, 50);
+		MediaSearchResult result = new MediaSearchResult("tvdb", MediaType.TV_SHOW);
+		result.setId("73838");
+
+		assertNull(cache.get("tvdb", "Malcolm mittendrin", 2000));
+		cache.put("tvdb", "Malcolm mittendrin", 2000, result);
+		cache.put("tmdb/movie", "Malcolm mittendrin", 2000, null);
+
+		assertSame(result, cache.get("tvdb", "  Malcolm - Mittendrin! ", 2000).getResult());
+		assertNull(cache.get("tvdb", "Malcolm mittendrin", 2001));
+		assertTrue(cache.get("tmdb/movie", "malcolm mittendrin", 2000).isNoMatch());
+		assertEquals(0.5, cache.getHitRate(), 0.001);
+
+		// "no match" is forgotten earlier
+		Thread.sleep(100);
+		assertNull(cache.get("tmdb/movie", "malcolm mittendrin", 2000));
+		assertNotNull(cache.get("tvdb", "Malcolm mittendrin", 2000));
+	}
+
+	@Test
+	public void testNormalizeTitle() {
+		assertEquals("der kleine konig", ProviderMatchCache.normalizeTitle("Der kleine König"));
+		assertEquals("malcolm mittendrin", ProviderMatchCache.normalizeTitle("Malcolm: Mittendrin"));
+		assertEquals("", ProviderMatchCache.normalizeTitle(null));
+	}
+}
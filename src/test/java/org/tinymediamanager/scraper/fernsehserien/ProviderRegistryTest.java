@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaProviderInfo;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.MediaSearchOptions;
+import org.tinymediamanager.scraper.MediaSearchResult;
+import org.tinymediamanager.scraper.entities.MediaEpisode;
+import org.tinymediamanager.scraper.entities.MediaType;
+import org.tinymediamanager.scraper.mediaprovider.IMediaProvider;
+import org.tinymediamanager.scraper.mediaprovider.ITvShowMetadataProvider;
+
+public class ProviderRegistryTest {
+
+	@Test
+	public void testLookupIsCached() {
+		TestRegistry registry = new TestRegistry(new StubProvider("tvdb"), new StubProvider("tmdb"));
+		assertEquals("tvdb", registry.get(ITvShowMetadataProvider.class, "tvdb").getProviderInfo().getId());
+		assertEquals("tmdb", registry.get(ITvShowMetadataProvider.class, "tmdb").getProviderInfo().getId());
+		assertEquals(1, registry.lookups);
+
+		// plugins reloaded
+		registry.owner = new Object();
+		registry.get(ITvShowMetadataProvider.class, "tvdb");
+		assertEquals(2, registry.lookups);
+
+		registry.invalidate();
+		registry.get(ITvShowMetadataProvider.class, "tvdb");
+		assertEquals(3, registry.lookups);
+	}
+
+	@Test
+	public void testFailuresAreRecorded() {
+		TestRegistry registry = new TestRegistry(new StubProvider("tvdb"));
+		assertNull(registry.get(ITvShowMetadataProvider.class, "imdb"));
+		assertThat(registry.getLastFailure("imdb")).contains("no ITvShowMetadataProvider installed");
+
+		registry.recordFailure("tvdb", "search", new IOException("503"));
+		registry.recordFailure("tvdb", "search", new IOException("connection reset"));
+		assertThat(registry.getLastFailure("tvdb")).isEqualTo("search: java.io.IOException: connection reset");
+		assertThat(registry.getFailures().get("tvdb")).endsWith("(2x)");
+		assertNull(registry.getLastFailure("tmdb"));
+	}
+
+	@Test
+	public void testMissingProviderIsNoMatch() throws Exception {
+		// the search worker has to tell "tvdb isn't installed" from "tvdb found nothing", or the miss would be cached
+		ProviderRegistry previous = ProviderRegistry.setInstance(new TestRegistry(new StubProvider("tmdb")));
+		try {
+			MediaSearchOptions options = new MediaSearchOptions(MediaType.TV_SHOW, "Malcolm mittendrin");
+			try {
+				new OtherTvShowSearchWorker("tvdb", options).call();
+				fail("expected a NotInstalledException");
+			}
+			catch (ProviderRegistry.NotInstalledException e) {
+				assertThat(e.getMessage()).contains("tvdb");
+				assertEquals("notInstalled", ScraperMetrics.getCause(e));
+			}
+			assertNull(new OtherTvShowSearchWorker("tmdb", options).call());
+		}
+		finally {
+			ProviderRegistry.setInstance(previous);
+		}
+	}
+
+	private static class TestRegistry extends ProviderRegistry {
+		final List<IMediaProvider> providers;
+		Object owner = new Object();
+		int lookups;
+
+		TestRegistry(IMediaProvider... providers) {
+			this.providers = Arrays.asList(providers);
+		}
+
+		@Override
+		protected Object getOwner() {
+			return owner;
+		}
+
+		@Override
+		protected <T extends IMediaProvider> List<T> lookup(Class<T> type) {
+			lookups++;
+			List<T> result = new ArrayList<>();
+			for (IMediaProvider provider : providers) {
+				result.add(type.cast(provider));
+			}
+			return result;
+		}
+	}
+
+	private static class StubProvider implements ITvShowMetadataProvider {
+		private final MediaProviderInfo info;
+
+		StubProvider(String id) {
+			info = new MediaProviderInfo(id, id, id);
+		}
+
+		@Override
+		public MediaProviderInfo getProviderInfo() {
+			return info;
+		}
+
+		@Override
+		public MediaMetadata getMetadata(MediaScrapeOptions options) {
+			return null;
+		}
+
+		@Override
+		public List<MediaSearchResult> search(MediaSearchOptions options) {
+			return null;
+		}
+
+		@Override
+		public List<MediaEpisode> getEpisodeList(MediaScrapeOptions options) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.entities.MediaType;
+
+public class RegionParserTest {
+	private static final FernsehserienSiteDefinition SITE = FernsehserienSiteDefinition.FERNSEHSERIEN_COM;
+	private static byte[] showPage;
+
+	@BeforeClass
+	public static void setUpClass() throws IOException {
+		try (InputStream is = new GZIPInputStream(RegionParserTest.class.getResourceAsStream("/fixtures/show-malcolm-mittendrin.html.gz"))) {
+			showPage = IOUtils.toByteArray(is);
+		}
+	}
+
+	private static MediaMetadata parseInfoPage(Document doc) {
+		MediaMetadata md = new MediaMetadata(FernsehserienMetadataProvider.providerInfo.getId());
+		return new FernsehserienTvShowParser(SITE).parseInfoPage(doc, new MediaScrapeOptions(MediaType.TV_SHOW), md);
+	}
+
+	private static Document parseFully(byte[] page) {
+		return Jsoup.parse(new String(page, SITE.getCharset()), "");
+	}
+
+	@Test
+	public void testSameMetadataAsFromTheWholePage() {
+		RegionParser parser = new RegionParser("serie-header", "serie-produktionsjahre", "serie-infos-erstausstrahlung", "serie-info");
+		Document regions = parser.parse(showPage, SITE.getCharset());
+		assertEquals(1, parser.getRegionParses());
+		// the scripts, the navigation, the ads and the comments are gone; ParserBenchmark measures what that saves
+		assertThat(regions.getAllElements().size()).isLessThan(parseFully(showPage).getAllElements().size() / 10);
+
+		MediaMetadata expected = parseInfoPage(parseFully(showPage));
+		MediaMetadata md = parseInfoPage(regions);
+		assertEquals("Malcolm mittendrin", md.getTitle());
+		assertEquals(1999, md.getYear());
+		assertEquals("USA", md.getCountries().get(0));
+		assertEquals("Malcolm In The Middle", md.getOriginalTitle());
+		assertEquals("Ended", md.getStatus());
+		assertEquals("2001-09-24", new SimpleDateFormat("yyyy-MM-dd", Locale.ROOT).format(md.getReleaseDate()));
+		assertThat(md.getPlot()).startsWith("In dieser Comedyserie dreht alles um Malcolm");
+
+		assertEquals(expected.getTitle(), md.getTitle());
+		assertEquals(expected.getYear(), md.getYear());
+		assertEquals(expected.getCountries(), md.getCountries());
+		assertEquals(expected.getOriginalTitle(), md.getOriginalTitle());
+		assertEquals(expected.getStatus(), md.getStatus());
+		assertEquals(expected.getReleaseDate(), md.getReleaseDate());
+		assertEquals(expected.getPlot(), md.getPlot());
+	}
+
+	@Test
+	public void testMarkersInScriptsAndCommentsAreIgnored() {
+		String page = "<html><head><script>var s = '<div class=\"infos\">not this</div>';</script></head><body>"
+				+ "<!-- <div class=\"infos\">nor this</div> -->"
+				+ "<div class=\"infos-extra\">nor this</div>"
+				+ "<div class='top infos'><div>Malcolm <script>document.write('</div>');</script>mittendrin</div></div>"
+				+ "<div>rest</div></body></html>";
+		Document doc = new RegionParser("infos").parse(page.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+		assertEquals(1, doc.select("div.infos").size());
+		assertEquals("Malcolm mittendrin", doc.select("div.infos").text());
+		assertTrue(doc.select("div:containsOwn(rest)").isEmpty());
+	}
+
+	@Test
+	public void testOnlyClassesAndIdsAreMarkers() {
+		String page = "<html><body><a href=\"/suche/ infos \">not this</a><img alt='infos' src=\"x.png\">"
+				+ "<div data-target=\"infos\" title=infos>nor this</div>"
+				+ "<section ID = infos><p>Malcolm mittendrin</p></section>"
+				+ "<div>rest</div></body></html>";
+		RegionParser parser = new RegionParser("infos");
+		Document doc = parser.parse(page.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+		assertEquals(1, parser.getRegionParses());
+		assertEquals("Malcolm mittendrin", doc.body().text());
+
+		// a marker only in other attributes is missing
+		parser = new RegionParser("infos");
+		parser.parse("<div data-infos=\"infos\"><a href=\"#infos\" rel=\"infos\">x</a></div>".getBytes(StandardCharsets.UTF_8),
+				StandardCharsets.UTF_8);
+		assertEquals(1, parser.getFullParses());
+	}
+
+	@Test
+	public void testFallBackToTheWholePage() {
+		RegionParser parser = new RegionParser("serie-header", "gibt-es-nicht");
+		Document doc = parser.parse(showPage, SITE.getCharset());
+		assertEquals(1, parser.getFullParses());
+		assertEquals(0, parser.getRegionParses());
+		assertEquals("Malcolm mittendrin", parseInfoPage(doc).getTitle());
+
+		// an element that doesn't end
+		parser = new RegionParser("infos");
+		doc = parser.parse("<div class=\"infos\"><div>Malcolm</div>".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+		assertEquals(1, parser.getFullParses());
+		assertEquals("Malcolm", doc.select(".infos").text());
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+public class ScrapeContextTest {
+
+	@Test
+	public void testHungTaskIsCancelled() throws Exception {
+		ScraperExecutor executor = new ScraperExecutor("test", 1, ScraperExecutor.MODE_THREADS);
+		try {
+			final CountDownLatch never = new CountDownLatch(1);
+			Future<String> hung = executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					never.await();
+					return "too late";
+				}
+			});
+
+			ScrapeContext context = new ScrapeContext(100);
+			long start = System.currentTimeMillis();
+			try {
+				context.await(hung, "the hung provider");
+				fail("expected a timeout");
+			}
+			catch (TimeoutException e) {
+				assertThat(e.getMessage()).contains("the hung provider");
+			}
+			assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+			assertTrue(hung.isCancelled());
+			assertTrue(context.isExpired());
+			assertEquals(0, context.remainingMillis());
+			assertEquals(1, context.timeoutMillis(10000));
+
+			try {
+				context.checkDeadline("the next page");
+				fail("expected a timeout");
+			}
+			catch (TimeoutException expected) {
+				// ok
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testBudgetLeft() throws Exception {
+		ScrapeContext context = new ScrapeContext(60000);
+		assertFalse(context.isExpired());
+		assertEquals(10000, context.timeoutMillis(10000));
+		context.checkDeadline("the first page");
+	}
+}
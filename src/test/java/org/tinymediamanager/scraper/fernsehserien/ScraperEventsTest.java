@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+import org.tinymediamanager.scraper.MediaMetadata;
+import org.tinymediamanager.scraper.MediaScrapeOptions;
+import org.tinymediamanager.scraper.entities.CountryCode;
+import org.tinymediamanager.scraper.entities.MediaType;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class ScraperEventsTest {
+
+	@Test
+	public void testPageKind() {
+		assertEquals(ScraperEvents.FAST_SEARCH, ScraperEvents.getPageKind("https://www.fernsehserien.de/fastsearch?suchwort=Malcolm"));
+		assertEquals(ScraperEvents.SEARCH_PAGE, ScraperEvents.getPageKind("https://www.fernsehserien.de/suche/Die+Deutschen"));
+		assertEquals(ScraperEvents.SHOW_PAGE, ScraperEvents.getPageKind("https://www.fernsehserien.de/malcolm-mittendrin"));
+		assertEquals(ScraperEvents.EPISODE_GUIDE, ScraperEvents.getPageKind("https://www.fernsehserien.de/malcolm-mittendrin/episodenguide"));
+		assertEquals(ScraperEvents.EPISODE_PAGE,
+				ScraperEvents.getPageKind("https://www.fernsehserien.de//malcolm-mittendrin/folgen/1x01-folge-1-100001"));
+	}
+
+	@Test
+	public void testNothingIsRecordedWithoutRecording() {
+		assertFalse(ScraperEvents.FETCH.isEnabled());
+		assertSame(ScraperEvents.Event.DISABLED, ScraperEvents.FETCH.begin());
+	}
+
+	@Test
+	public void testEventsOfAScrape() throws Exception {
+		new FernsehserienMetadataProvider();
+		String useLocalStore = FernsehserienMetadataProvider.providerInfo.getConfig().getValue("useLocalStore");
+		FernsehserienMetadataProvider.providerInfo.getConfig().setValue("useLocalStore", false);
+		FernsehserienTvShowParser.GUIDE_CACHE.clear();
+		FernsehserienTvShowParser.MATCH_CACHE.clear();
+		FixtureServer server = new FixtureServer().start();
+		File file = File.createTempFile("scraper", ".jfr");
+		FernsehserienTvShowParser parser = server.newParser(new ScrapeContext(30000));
+		try (Recording recording = new Recording()) {
+			recording.enable(ScraperEvents.FETCH.getName());
+			recording.enable(ScraperEvents.PARSE.getName());
+			recording.enable(ScraperEvents.PROVIDER_CALL.getName());
+			recording.start();
+			assertTrue(ScraperEvents.FETCH.isEnabled());
+
+			MediaScrapeOptions options = new MediaScrapeOptions(MediaType.TV_SHOW);
+			options.setId("", "malcolm-mittendrin");
+			options.setLanguage(Locale.GERMAN);
+			options.setCountry(CountryCode.DE);
+			parser.getTvShowMetadata("", options);
+
+			options = new MediaScrapeOptions(MediaType.TV_EPISODE);
+			options.setId("fernsehserien", "malcolm-mittendrin");
+			options.setId(MediaMetadata.SEASON_NR, "1");
+			options.setId(MediaMetadata.EPISODE_NR, "1");
+			options.setLanguage(Locale.GERMAN);
+			options.setCountry(CountryCode.DE);
+			parser.getEpisodeMetadata("", options);
+
+			recording.stop();
+			recording.dump(file.toPath());
+		}
+		finally {
+			server.stop();
+			FernsehserienMetadataProvider.providerInfo.getConfig().setValue("useLocalStore", useLocalStore);
+		}
+
+		List<String> fetched = new ArrayList<>();
+		List<String> parsed = new ArrayList<>();
+		List<String> providers = new ArrayList<>();
+		try {
+			for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+				if (event.getLong("scrapeId") != parser.getContext().getId()) {
+					continue;
+				}
+				String name = event.getEventType().getName();
+				if (name.equals(ScraperEvents.FETCH.getName())) {
+					assertEquals(200, event.getInt("status"));
+					assertThat(event.getLong("bytes")).isGreaterThan(0);
+					fetched.add(event.getString("pageKind"));
+				}
+				else if (name.equals(ScraperEvents.PARSE.getName())) {
+					assertThat(event.getInt("elements")).isGreaterThan(0);
+					parsed.add(event.getString("pageKind"));
+				}
+				else {
+					providers.add(event.getString("provider") + " " + event.getString("call") + ": " + event.getString("outcome"));
+				}
+			}
+		}
+		finally {
+			file.delete();
+		}
+		assertThat(fetched).containsExactly(ScraperEvents.SHOW_PAGE, ScraperEvents.EPISODE_GUIDE, ScraperEvents.EPISODE_PAGE);
+		assertThat(parsed).containsExactly(ScraperEvents.SHOW_PAGE, ScraperEvents.EPISODE_GUIDE, ScraperEvents.EPISODE_PAGE);
+		// all four searches were waited for; without tmm they fail
+		assertThat(providers).hasSize(4);
+		assertThat(providers.get(0)).startsWith("tvdb search: ");
+		assertThat(providers.get(2)).startsWith("tmdb search movie: ");
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class ScraperExecutorTest {
+
+	@Test
+	public void testQueueMetrics() throws Exception {
+		ScraperExecutor executor = new ScraperExecutor("test", 1, ScraperExecutor.MODE_THREADS);
+		try {
+			final CountDownLatch running = new CountDownLatch(1);
+			final CountDownLatch release = new CountDownLatch(1);
+			Future<String> first = executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					running.countDown();
+					release.await();
+					return Thread.currentThread().getName();
+				}
+			});
+			assertTrue(running.await(5, TimeUnit.SECONDS));
+			Future<String> second = executor.submit(new Constant("second"));
+			Future<String> third = executor.submit(new Constant("third"));
+
+			assertEquals(1, executor.getActiveCount());
+			assertEquals(2, executor.getQueueDepth());
+
+			// a task cancelled while it waits leaves the queue as well
+			third.cancel(false);
+			assertEquals(1, executor.getQueueDepth());
+
+			Thread.sleep(20);
+			release.countDown();
+			assertThat(first.get(5, TimeUnit.SECONDS)).startsWith("fernsehserien-test-");
+			assertEquals("second", second.get(5, TimeUnit.SECONDS));
+			assertEquals(0, executor.getQueueDepth());
+			assertEquals(2, executor.getCompletedCount());
+			assertThat(executor.getMaxWaitMillis()).isGreaterThanOrEqualTo(20);
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertTrue(executor.isShutdown());
+	}
+
+	@Test
+	public void testVirtualMode() throws Exception {
+		// falls back to platform threads on JREs without virtual threads
+		ScraperExecutor executor = new ScraperExecutor("virtual", 2, ScraperExecutor.MODE_VIRTUAL);
+		try {
+			assertEquals("done", executor.submit(new Constant("done")).get(5, TimeUnit.SECONDS));
+			assertEquals(2, executor.getSize());
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	private static class Constant implements Callable<String> {
+		private final String value;
+
+		Constant(String value) {
+			this.value = value;
+		}
+
+		@Override
+		public String call() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class ScraperMetricsTest {
+
+	@Test
+	public void testTimersAndCounters() {
+		ScraperMetrics metrics = new ScraperMetrics();
+		long start = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(20);
+		metrics.recordStage(ScraperMetrics.PARSE_INFO_PAGE, start);
+		metrics.recordStage(ScraperMetrics.PARSE_INFO_PAGE, System.nanoTime());
+		metrics.recordProvider("tvdb", "search", start);
+		metrics.recordError(ScraperMetrics.FETCH, new IOException("HTTP 503 for https://www.fernsehserien.de/, 4 times in a row"));
+		metrics.recordError(ScraperMetrics.FETCH, new IOException("HTTP 503 for https://www.fernsehserien.de/"));
+
+		Map<String, Number> snapshot = metrics.snapshot();
+		assertEquals(2L, snapshot.get("stage.parseInfoPage.count"));
+		assertThat(snapshot.get("stage.parseInfoPage.maxMillis").doubleValue()).isGreaterThanOrEqualTo(20);
+		assertThat(snapshot.get("stage.parseInfoPage.avgMillis").doubleValue()).isGreaterThanOrEqualTo(10).isLessThan(20);
+		assertEquals(1L, snapshot.get("provider.tvdb.search.count"));
+		assertEquals(2L, snapshot.get("errors.fetch.http503"));
+		assertThat(snapshot).containsKeys("http.requests", "http.bytesDownloaded", "limiter.throttled");
+	}
+
+	@Test
+	public void testCauses() {
+		assertEquals("timeout", ScraperMetrics.getCause(new SocketTimeoutException("Read timed out")));
+		assertEquals("deadline", ScraperMetrics.getCause(new TimeoutException("no time left")));
+		assertEquals("connection", ScraperMetrics.getCause(new ConnectException("Connection refused")));
+		assertEquals("http404", ScraperMetrics.getCause(new IOException("HTTP 404 for https://www.fernsehserien.de/gibt-es-nicht")));
+		assertEquals("IOException", ScraperMetrics.getCause(new IOException("broken")));
+	}
+
+	@Test
+	public void testJmx() throws Exception {
+		ScraperMetrics.register();
+		try {
+			ScraperMetrics.getInstance().recordStage(ScraperMetrics.FETCH, System.nanoTime());
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("org.tinymediamanager.scraper.fernsehserien:type=ScraperMetrics");
+			assertThat(((Number) server.getAttribute(name, "stage.fetch.count")).longValue()).isGreaterThan(0);
+			assertThat(server.getMBeanInfo(name).getAttributes().length).isGreaterThan(4);
+		}
+		finally {
+			ScraperMetrics.unregister();
+		}
+	}
+}
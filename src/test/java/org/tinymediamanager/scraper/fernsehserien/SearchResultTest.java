@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SearchResultTest {
+
+	@Test
+	public void testRead() throws Exception {
+		String json = "[{\"a\":\"s\",\"t\":\"Malcolm mittendrin\",\"l\":\"USA 2000–2006\",\"s\":\"malcolm-mittendrin\","
+				+ "\"b\":\"https://bilder.fernsehserien.de/malcolm.jpg\",\"x\":{\"y\":[1,2]},\"c\":null},"
+				+ "{\"a\":\"s\",\"t\":\"Tatort\",\"l\":\"D/A/CH seit 1970\",\"s\":\"tatort\"},"
+				+ "{\"t\":\"Neu\",\"l\":\"D\",\"s\":\"neu\"},";
+		// the response is cut off after the third result; we don't read that far
+		List<SearchResult> results = SearchResult.read(new StringReader(json), 3);
+
+		assertEquals(3, results.size());
+		SearchResult malcolm = results.get(0);
+		assertEquals(SearchResult.Types.Series, malcolm.getType());
+		assertEquals("Malcolm mittendrin", malcolm.getTitle());
+		assertEquals("malcolm-mittendrin", malcolm.getSeries());
+		assertEquals("https://bilder.fernsehserien.de/malcolm.jpg", malcolm.getBannerUrl());
+		assertNull(malcolm.getCopyright());
+		assertEquals(2000, malcolm.getYear());
+		assertThat(malcolm.getCountries()).containsExactly("USA");
+
+		assertEquals(1970, results.get(1).getYear());
+		assertThat(results.get(1).getCountries()).containsExactly("D", "A", "CH");
+		assertEquals(SearchResult.Types.Unknown, results.get(2).getType());
+		assertEquals(0, results.get(2).getYear());
+		assertThat(results.get(2).getCountries()).containsExactly("D");
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Eberhard Beilharz
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tinymediamanager.scraper.fernsehserien;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+	@Test
+	public void testConcurrentCallsShareOneResult() throws Exception {
+		final SingleFlight<String> flights = new SingleFlight<>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger calls = new AtomicInteger();
+		final Callable<String> work = new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				calls.incrementAndGet();
+				started.countDown();
+				release.await();
+				return "episodenguide";
+			}
+		};
+
+		ScraperExecutor executor = new ScraperExecutor("test", 5, ScraperExecutor.MODE_THREADS);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			futures.add(executor.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return flights.execute("malcolm-mittendrin", work, new ScrapeContext(10000));
+				}
+			}));
+			assertTrue(started.await(10, TimeUnit.SECONDS));
+			for (int i = 0; i < 4; i++) {
+				futures.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return flights.execute("malcolm-mittendrin", work, new ScrapeContext(10000));
+					}
+				}));
+			}
+			while (flights.getCollapsed() < 4) {
+				Thread.sleep(5);
+			}
+			release.countDown();
+
+			for (Future<String> future : futures) {
+				assertEquals("episodenguide", future.get(10, TimeUnit.SECONDS));
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertEquals(1, calls.get());
+		assertEquals(1, flights.getExecuted());
+		assertEquals(4, flights.getCollapsed());
+
+		// once it is done the work is done again
+		assertEquals("episodenguide", flights.execute("malcolm-mittendrin", work, new ScrapeContext(10000)));
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testFailureIsPassedOn() throws Exception {
+		SingleFlight<String> flights = new SingleFlight<>();
+		try {
+			flights.execute("broken", new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					throw new IOException("HTTP 503");
+				}
+			}, new ScrapeContext(10000));
+			fail("expected an IOException");
+		}
+		catch (IOException e) {
+			assertEquals("HTTP 503", e.getMessage());
+		}
+	}
+}